@@ -0,0 +1 @@
+java -XX:+IgnoreUnrecognizedVMOptions -XX:+UseAppCDS -Xshare:auto -XX:SharedArchiveFile=build/compiler.jsa -jar build/compiler.jar --js testJsFiles/test2.js --js testJsFiles/test3.js --js testJsFiles/test4.js --formatting PRETTY_PRINT
\ No newline at end of file
@@ -1,13 +1,147 @@
 package com.google.javascript.jscomp;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.javascript.jscomp.CommandLineRunner;
 import com.google.javascript.jscomp.CompilerOptions;
 
 public class CampCommandLineRunner extends CommandLineRunner {
 
+  /**
+   * The flag of the batch mode. The arguments following this flag are the
+   * flagfiles of the targets.
+   *
+   * <pre>
+   * java -jar compiler.jar --camp_batch target1.txt target2.txt ...
+   * </pre>
+   */
+  static final String BATCH_FLAG = "--camp_batch";
+
+  /**
+   * The flag of the watch mode. The compiler compiles again whenever the
+   * inputs are modified.
+   *
+   * <pre>
+   * java -jar compiler.jar --watch --flagfile testFlagFile.txt
+   * </pre>
+   */
+  static final String WATCH_FLAG = "--watch";
+
+  private static final String STDIN = "-";
+
+  private final CampInputCache inputCache;
+
+  private final CampModuleCache moduleCache;
+
+  private final File workingDirectory;
+
+  private List<SourceFile> externs;
+
+
   public CampCommandLineRunner(String[] args) {
     // The superclass is responsible for parsing the command-line arguments.
-    super(args);
+    // The default externs are restored from the snapshot if it is available.
+    // The rewritten modules are restored from the disk if it is enabled.
+    this(args, System.out, System.err, new CampInputCache(CampExternsSnapshot.createDefault()),
+        CampModuleCache.createDefault());
+  }
+
+
+  /**
+   * Constructor that writes the compiled code and the diagnostics to the given
+   * streams instead of the standard streams. This is used by the compile
+   * daemon.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   */
+  public CampCommandLineRunner(String[] args, PrintStream out, PrintStream err) {
+    this(args, out, err, null);
+  }
+
+
+  /**
+   * Constructor of the target of the batch compilation.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   * @param inputCache
+   *          The inputs shared between the targets, or null.
+   */
+  CampCommandLineRunner(String[] args, PrintStream out, PrintStream err,
+      CampInputCache inputCache) {
+    this(args, out, err, inputCache, null);
+  }
+
+
+  /**
+   * Constructor of the target which is compiled repeatedly.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   * @param inputCache
+   *          The inputs shared between the targets, or null.
+   * @param moduleCache
+   *          The rewritten modules of the previous compilations of the
+   *          target, or null.
+   */
+  CampCommandLineRunner(String[] args, PrintStream out, PrintStream err,
+      CampInputCache inputCache, CampModuleCache moduleCache) {
+    this(args, out, err, inputCache, moduleCache, null);
+  }
+
+
+  /**
+   * Constructor of the target which is sent by the client in other working
+   * directory.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   * @param inputCache
+   *          The inputs shared between the targets, or null.
+   * @param moduleCache
+   *          The rewritten modules of the previous compilations of the
+   *          target, or null.
+   * @param workingDirectory
+   *          The directory that the relative input and output paths are
+   *          resolved against, or null for the working directory of the jvm.
+   */
+  CampCommandLineRunner(String[] args, PrintStream out, PrintStream err,
+      CampInputCache inputCache, CampModuleCache moduleCache, File workingDirectory) {
+    super(args, out, err);
+    this.inputCache = inputCache;
+    this.moduleCache = moduleCache;
+    this.workingDirectory = workingDirectory;
   }
 
 
@@ -22,12 +156,233 @@ public class CampCommandLineRunner extends CommandLineRunner {
 
   @Override
   protected Compiler createCompiler() {
-    return new CampCompiler(getErrorPrintStream());
+    CampCompiler compiler = new CampCompiler(getErrorPrintStream());
+    compiler.getCampContext().setModuleCache(moduleCache);
+    if (externs != null) {
+      compiler.setSharedExterns(externs, inputCache);
+      externs = null;
+    }
+    return compiler;
+  }
+
+
+  /**
+   * The externs are not passed to the compiler as the source files but added
+   * as the copies of the shared trees when the inputs are parsed.
+   */
+  @Override
+  protected List<SourceFile> createExterns() throws FlagUsageException, IOException {
+    List<SourceFile> files = super.createExterns();
+    if (inputCache == null) {
+      return files;
+    }
+
+    externs = Lists.newArrayList();
+    for (SourceFile file : files) {
+      externs.add(inputCache.getSourceFile("extern:" + file.getName(), file));
+    }
+    return Lists.newArrayList();
+  }
+
+
+  /**
+   * The same file is read once for all targets of a batch. The targets of a
+   * batch are expected to use the same input charset. The relative paths are
+   * resolved against the working directory of the target, and the inputs
+   * keep the names given by the arguments.
+   */
+  @Override
+  protected List<SourceFile> createInputs(List<String> files, boolean allowStdIn)
+      throws FlagUsageException, IOException {
+    List<String> paths = Lists.newArrayListWithCapacity(files.size());
+    Map<String, String> nameMap = Maps.newHashMap();
+    for (String name : files) {
+      String path = resolvePath(name);
+      paths.add(path);
+      nameMap.put(path, name);
+    }
+
+    List<SourceFile> inputs = super.createInputs(paths, allowStdIn);
+    if (workingDirectory == null
+        && (inputCache == null || !allowStdIn || files.isEmpty() || files.contains(STDIN))) {
+      return inputs;
+    }
+
+    List<SourceFile> ret = Lists.newArrayList();
+    for (SourceFile file : inputs) {
+      String path = file.getName();
+      String name = nameMap.get(path);
+      if (name != null && !name.equals(path)) {
+        file = rename(file, name);
+      }
+      if (inputCache != null && allowStdIn && !files.contains(STDIN)) {
+        String key = "js:" + new File(path).getAbsolutePath();
+        file = inputCache.getSourceFile(key, file);
+      }
+      ret.add(file);
+    }
+    return ret;
+  }
+
+
+  /**
+   * Return the copy of the source file that has the name.
+   */
+  private static SourceFile rename(SourceFile file, String name) {
+    try {
+      return SourceFile.fromCode(name, file.getCode());
+    } catch (IOException e) {
+      // The compiler reports the error with the resolved path.
+      return file;
+    }
+  }
+
+
+  /**
+   * Resolve the relative path against the working directory of the target.
+   */
+  private String resolvePath(String path) {
+    if (workingDirectory == null || path == null || path.equals(STDIN)
+        || new File(path).isAbsolute()) {
+      return path;
+    }
+    return new File(workingDirectory, path).getPath();
+  }
+
+
+  @Override
+  protected OutputStream filenameToOutputStream(String fileName) throws IOException {
+    return super.filenameToOutputStream(resolvePath(fileName));
+  }
+
+
+  @Override
+  protected int doRun() throws FlagUsageException, IOException {
+    int result = super.doRun();
+    if (inputCache != null) {
+      inputCache.saveSnapshot();
+    }
+    if (moduleCache != null) {
+      moduleCache.evict();
+    }
+    return result;
   }
-  
-  
+
+
+  /**
+   * Run the compiler without terminating the jvm.
+   *
+   * @return The exit status that the command-line runner would exit with.
+   */
+  int compile() {
+    if (!shouldRunCompiler()) {
+      return -1;
+    }
+
+    try {
+      return doRun();
+    } catch (FlagUsageException e) {
+      getErrorPrintStream().println(e.getMessage());
+      return -1;
+    } catch (IOException e) {
+      e.printStackTrace(getErrorPrintStream());
+      return -2;
+    } catch (RuntimeException e) {
+      e.printStackTrace(getErrorPrintStream());
+      return -2;
+    }
+  }
+
+
+  /**
+   * Compile the targets which are described by the flagfiles. The externs and
+   * the source files are shared between the targets, and the targets are
+   * compiled in parallel. The output of each target is written in the order
+   * of the flagfiles.
+   *
+   * @param flagFiles
+   *          The flagfiles of the targets.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   * @return The first non-zero exit status of the targets, or zero.
+   */
+  static int runBatch(List<String> flagFiles, PrintStream out, PrintStream err) {
+    final CampInputCache inputCache = new CampInputCache(CampExternsSnapshot.createDefault());
+    int threads = Math.max(1,
+        Math.min(flagFiles.size(), Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> results = Lists.newArrayList();
+    List<ByteArrayOutputStream> outBuffers = Lists.newArrayList();
+    List<ByteArrayOutputStream> errBuffers = Lists.newArrayList();
+
+    try {
+      // The runners are created one by one on this thread, because the
+      // command-line runner parses the warning guards into a static list.
+      // Only the compilations run in parallel.
+      for (String flagFile : flagFiles) {
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        String[] args = new String[] {"--flagfile", flagFile};
+        outBuffers.add(outBuffer);
+        errBuffers.add(errBuffer);
+        final CampCommandLineRunner runner = new CampCommandLineRunner(
+            args, new PrintStream(outBuffer, true), new PrintStream(errBuffer, true), inputCache,
+            CampModuleCache.createDefault());
+        results.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return Integer.valueOf(runner.compile());
+          }
+        }));
+      }
+
+      int status = 0;
+      for (int i = 0; i < results.size(); i++) {
+        int result;
+        try {
+          result = results.get(i).get().intValue();
+        } catch (ExecutionException e) {
+          e.getCause().printStackTrace(new PrintStream(errBuffers.get(i), true));
+          result = -2;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return -2;
+        }
+        err.write(errBuffers.get(i).toByteArray(), 0, errBuffers.get(i).size());
+        out.write(outBuffers.get(i).toByteArray(), 0, outBuffers.get(i).size());
+        if (status == 0) {
+          status = result;
+        }
+      }
+      out.flush();
+      err.flush();
+      return status;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
   /** Runs the Compiler */
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+      System.exit(runBatch(Arrays.asList(args).subList(1, args.length), System.out, System.err));
+    }
+
+    List<String> argList = Lists.newArrayList(args);
+    if (argList.remove(WATCH_FLAG)) {
+      String[] watchArgs = argList.toArray(new String[argList.size()]);
+      try {
+        new CampCompileWatcher(watchArgs, System.out, System.err).watch();
+      } catch (IOException e) {
+        e.printStackTrace();
+        System.exit(-2);
+      }
+      return;
+    }
+
     CampCommandLineRunner runner = new CampCommandLineRunner(args);
     if (runner.shouldRunCompiler()) {
       runner.run();
@@ -0,0 +1,146 @@
+package com.google.javascript.jscomp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The thin client of the CampCompileServer. This forwards the command-line
+ * arguments to the daemon, and writes back the compiled code and the
+ * diagnostics to the standard streams. The working directory of the client is
+ * sent with the arguments, so the relative paths are resolved as if the
+ * compiler runs in the client. The request starts with the token that the
+ * daemon has written to the file only the same user can read.
+ *
+ * <pre>
+ * java -cp compiler.jar com.google.javascript.jscomp.CampCompileClient [--camp_server_port port] --flagfile testFlagFile.txt
+ * </pre>
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampCompileClient {
+
+  private static final String FLAGFILE = "--flagfile";
+
+  private final int port;
+
+  private final File tokenFile;
+
+
+  /**
+   * Constructor.
+   *
+   * @param port
+   *          The port of the daemon.
+   */
+  public CampCompileClient(int port) {
+    this(port, CampCompileServer.getTokenFile(port));
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param port
+   *          The port of the daemon.
+   * @param tokenFile
+   *          The file that the daemon has written the token to.
+   */
+  CampCompileClient(int port, File tokenFile) {
+    this.port = port;
+    this.tokenFile = tokenFile;
+  }
+
+
+  /**
+   * Send the arguments to the daemon and wait until the compilation is
+   * finished.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @param stdout
+   *          The stream for the compiled code.
+   * @param stderr
+   *          The stream for the diagnostics.
+   * @return The exit status of the compilation.
+   * @throws IOException
+   */
+  public int execute(String[] args, PrintStream stdout, PrintStream stderr) throws IOException {
+    String token = CampCompileServer.readToken(tokenFile);
+    Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out.writeUTF(token);
+      out.writeUTF(new File("").getAbsolutePath());
+      CampCompileServer.writeArguments(out, resolveFlagFiles(args));
+
+      while (true) {
+        byte kind = in.readByte();
+        if (kind == CampCompileServer.FRAME_EXIT) {
+          stdout.flush();
+          stderr.flush();
+          return in.readInt();
+        }
+        byte[] buffer = new byte[in.readInt()];
+        in.readFully(buffer);
+        if (kind == CampCompileServer.FRAME_OUT) {
+          stdout.write(buffer);
+        } else {
+          stderr.write(buffer);
+        }
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+
+  /**
+   * Make the flagfile paths absolute, because the daemon may run in other
+   * working directory.
+   *
+   * @param args
+   *          The command-line arguments.
+   * @return The resolved arguments.
+   */
+  private String[] resolveFlagFiles(String[] args) {
+    List<String> ret = Lists.newArrayList();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals(FLAGFILE) && i + 1 < args.length) {
+        ret.add(arg);
+        ret.add(new File(args[++i]).getAbsolutePath());
+      } else if (arg.startsWith(FLAGFILE + "=")) {
+        String path = arg.substring(FLAGFILE.length() + 1);
+        ret.add(FLAGFILE + "=" + new File(path).getAbsolutePath());
+      } else {
+        ret.add(arg);
+      }
+    }
+    return ret.toArray(new String[ret.size()]);
+  }
+
+
+  /** Forward the arguments to the daemon. */
+  public static void main(String[] args) throws IOException {
+    int port = CampCompileServer.DEFAULT_PORT;
+    if (args.length >= 2 && args[0].equals(CampCompileServer.PORT_FLAG)) {
+      port = Integer.parseInt(args[1]);
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+    System.exit(new CampCompileClient(port).execute(args, System.out, System.err));
+  }
+}
@@ -0,0 +1,405 @@
+package com.google.javascript.jscomp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The long-lived compile daemon. The daemon keeps one warm jvm and runs the
+ * CampCommandLineRunner for each argument vector that is sent by the
+ * CampCompileClient, so the class loading and the jit warm-up are paid only
+ * once.
+ *
+ * The protocol is as follows.
+ *
+ * <pre>
+ * request  : utf token, utf working directory, int argc, argc * utf argument
+ * response : (byte kind, int length, length * byte)* byte FRAME_EXIT, int exit status
+ * </pre>
+ *
+ * The daemon listens only on the loopback address, and it writes the random
+ * token to the file that only the owner can read, '.camp_compile_server_PORT'
+ * in the home directory. The request that does not start with the token is
+ * rejected, so the other local users can not run the compilation that writes
+ * the files as the owner of the daemon, nor shut down the daemon.
+ *
+ *
+ * The kind of the response frame is FRAME_OUT for the compiled code and
+ * FRAME_ERR for the diagnostics. The relative input and output paths in the
+ * arguments and the flagfiles are resolved against the working directory of
+ * the client. The flagfiles themselves are given by the absolute paths.
+ *
+ * <p>
+ * The parsed externs are kept for the lifetime of the daemon, and the source
+ * files are read again for each request.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampCompileServer {
+
+  static final int DEFAULT_PORT = 8705;
+
+  static final String PORT_FLAG = "--camp_server_port";
+
+  static final String SHUTDOWN_FLAG = "--camp_server_shutdown";
+
+  static final byte FRAME_EXIT = 0;
+
+  static final byte FRAME_OUT = 1;
+
+  static final byte FRAME_ERR = 2;
+
+  /**
+   * The number of the argument vectors whose rewritten modules are kept.
+   */
+  private static final int MAX_CACHED_TARGETS = 16;
+
+  /**
+   * The limit of the number of the arguments of a request.
+   */
+  private static final int MAX_ARGUMENTS = 1 << 16;
+
+  private static final int TOKEN_BYTES = 32;
+
+  private final ServerSocket serverSocket;
+
+  private final File tokenFile;
+
+  private final byte[] token;
+
+  private final Map<List<String>, CampModuleCache> moduleCacheMap =
+      new LinkedHashMap<List<String>, CampModuleCache>(MAX_CACHED_TARGETS, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, CampModuleCache> eldest) {
+          return size() > MAX_CACHED_TARGETS;
+        }
+      };
+
+  private final CampInputCache inputCache =
+      new CampInputCache(CampExternsSnapshot.createDefault());
+
+  private boolean running = true;
+
+
+  /**
+   * Constructor.
+   *
+   * @param port
+   *          The loopback port to listen on.
+   * @throws IOException
+   */
+  public CampCompileServer(int port) throws IOException {
+    this(port, getTokenFile(port));
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param port
+   *          The loopback port to listen on, or 0 for any free port.
+   * @param tokenFile
+   *          The file that the token of the requests is written to.
+   * @throws IOException
+   */
+  CampCompileServer(int port, File tokenFile) throws IOException {
+    this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    this.tokenFile = tokenFile;
+    byte[] bytes = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(bytes);
+    String tokenString = BaseEncoding.base16().encode(bytes);
+    this.token = tokenString.getBytes(Charsets.UTF_8);
+    try {
+      writeToken(tokenFile, tokenString);
+    } catch (IOException e) {
+      serverSocket.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Return the file of the token of the daemon on the port.
+   *
+   * @param port
+   *          The port of the daemon.
+   * @return The token file in the home directory.
+   */
+  static File getTokenFile(int port) {
+    return new File(System.getProperty("user.home"), ".camp_compile_server_" + port);
+  }
+
+
+  /**
+   * Write the token to the new file that only the owner can read and write.
+   */
+  private static void writeToken(File tokenFile, String token) throws IOException {
+    Path path = tokenFile.toPath();
+    Files.deleteIfExists(path);
+    try {
+      Files.createFile(path,
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException e) {
+      // The file system does not support the posix permissions.
+      Files.createFile(path);
+      if (!tokenFile.setReadable(false, false) || !tokenFile.setReadable(true, true)
+          || !tokenFile.setWritable(false, false) || !tokenFile.setWritable(true, true)) {
+        tokenFile.delete();
+        throw new IOException("The token file can not be protected: " + tokenFile);
+      }
+    }
+    Files.write(path, token.getBytes(Charsets.UTF_8));
+  }
+
+
+  /**
+   * Read the token of the daemon.
+   *
+   * @param tokenFile
+   *          The file written by the daemon.
+   * @return The token.
+   * @throws IOException
+   *           The daemon is not running, or the file can not be read.
+   */
+  static String readToken(File tokenFile) throws IOException {
+    return new String(Files.readAllBytes(tokenFile.toPath()), Charsets.UTF_8);
+  }
+
+
+  /**
+   * Return the port that the daemon listens on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+
+  /**
+   * Accept the requests until the shutdown request is received. The requests
+   * are processed one by one.
+   *
+   * @throws IOException
+   */
+  public void serve() throws IOException {
+    try {
+      while (running) {
+        Socket socket = serverSocket.accept();
+        try {
+          this.handle(socket);
+        } catch (IOException e) {
+          // The client has gone away, keep serving others.
+          e.printStackTrace();
+        } catch (RuntimeException e) {
+          // The broken request, keep serving others.
+          e.printStackTrace();
+        } finally {
+          socket.close();
+        }
+      }
+    } finally {
+      serverSocket.close();
+      tokenFile.delete();
+    }
+  }
+
+
+  /**
+   * Run one compilation and stream back its output.
+   *
+   * @param socket
+   *          The client connection.
+   * @throws IOException
+   */
+  private void handle(Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream()));
+
+    if (!MessageDigest.isEqual(token, in.readUTF().getBytes(Charsets.UTF_8))) {
+      PrintStream stderr = new PrintStream(new FrameOutputStream(out, FRAME_ERR), true, "UTF-8");
+      stderr.println("The token of the request is not valid.");
+      out.writeByte(FRAME_EXIT);
+      out.writeInt(-1);
+      out.flush();
+      return;
+    }
+
+    File workingDirectory = new File(in.readUTF());
+    String[] args = readArguments(in);
+    int status;
+    if (args.length == 1 && args[0].equals(SHUTDOWN_FLAG)) {
+      running = false;
+      status = 0;
+    } else {
+      PrintStream stdout = new PrintStream(new FrameOutputStream(out, FRAME_OUT), true, "UTF-8");
+      PrintStream stderr = new PrintStream(new FrameOutputStream(out, FRAME_ERR), true, "UTF-8");
+      if (workingDirectory.isAbsolute()) {
+        inputCache.clearSourceFiles();
+        status = new CampCommandLineRunner(args, stdout, stderr, inputCache,
+            getModuleCache(workingDirectory, args), workingDirectory).compile();
+      } else {
+        stderr.println("The working directory must be absolute: " + workingDirectory);
+        status = -1;
+      }
+      stdout.flush();
+      stderr.flush();
+    }
+
+    out.writeByte(FRAME_EXIT);
+    out.writeInt(status);
+    out.flush();
+  }
+
+
+  /**
+   * Return the rewritten modules of the previous requests of the same
+   * arguments in the same working directory. Only the modified scripts are
+   * rewritten again.
+   *
+   * @param workingDirectory
+   *          The working directory of the client.
+   * @param args
+   *          The arguments of the request.
+   * @return The cache of the target.
+   */
+  private CampModuleCache getModuleCache(File workingDirectory, String[] args) {
+    List<String> key = Lists.newArrayList(args);
+    key.add(0, workingDirectory.getPath());
+    CampModuleCache moduleCache = moduleCacheMap.get(key);
+    if (moduleCache == null) {
+      moduleCache = new CampModuleCache(CampModuleDiskCache.createDefault());
+      moduleCacheMap.put(key, moduleCache);
+    }
+    return moduleCache;
+  }
+
+
+  /**
+   * Read an argument vector.
+   *
+   * @param in
+   *          The request stream.
+   * @return The arguments.
+   * @throws IOException
+   *           The stream is closed, or the number of the arguments is not
+   *           valid.
+   */
+  static String[] readArguments(DataInputStream in) throws IOException {
+    int argc = in.readInt();
+    if (argc < 0 || argc > MAX_ARGUMENTS) {
+      throw new IOException("The number of the arguments is not valid: " + argc);
+    }
+    String[] args = new String[argc];
+    for (int i = 0; i < argc; i++) {
+      args[i] = in.readUTF();
+    }
+    return args;
+  }
+
+
+  /**
+   * Write an argument vector.
+   *
+   * @param out
+   *          The request stream.
+   * @param args
+   *          The arguments.
+   * @throws IOException
+   */
+  static void writeArguments(DataOutputStream out, String[] args) throws IOException {
+    out.writeInt(args.length);
+    for (String arg : args) {
+      out.writeUTF(arg);
+    }
+    out.flush();
+  }
+
+
+  /**
+   * The stream that wraps written bytes into the response frames.
+   *
+   * @author aono_taketoshi
+   *
+   */
+  private static final class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+
+    private final byte kind;
+
+
+    public FrameOutputStream(DataOutputStream out, byte kind) {
+      this.out = out;
+      this.kind = kind;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] {(byte) b}, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      synchronized (out) {
+        out.writeByte(kind);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+
+
+  /**
+   * Start the daemon.
+   *
+   * <pre>
+   * java -cp compiler.jar com.google.javascript.jscomp.CampCompileServer [--camp_server_port port]
+   * </pre>
+   */
+  public static void main(String[] args) throws IOException {
+    int port = DEFAULT_PORT;
+    if (args.length == 2 && args[0].equals(PORT_FLAG)) {
+      port = Integer.parseInt(args[1]);
+    }
+    new CampCompileServer(port).serve();
+  }
+}
@@ -0,0 +1,177 @@
+package com.google.javascript.jscomp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The watch mode of the CampCommandLineRunner. The watcher keeps the compiler
+ * resident, and compiles again whenever an input, an extern or a flagfile of
+ * the last compilation is modified.
+ *
+ * <pre>
+ * java -jar compiler.jar --watch --flagfile testFlagFile.txt
+ * </pre>
+ *
+ * The files which are not modified are not read again, the externs are parsed
+ * once for the session, and the camp modules of the files are rewritten again
+ * only if the files are modified.
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampCompileWatcher {
+
+  private static final String FLAGFILE = "--flagfile";
+
+  /**
+   * Editors often write a file by some operations, so the events are
+   * collected until the file system is quiet for this period.
+   */
+  private static final long QUIET_PERIOD_MILLIS = 100;
+
+  private final String[] args;
+
+  private final PrintStream out;
+
+  private final PrintStream err;
+
+  private final CampInputCache inputCache =
+      new CampInputCache(CampExternsSnapshot.createDefault());
+
+  private final CampModuleCache moduleCache =
+      new CampModuleCache(CampModuleDiskCache.createDefault());
+
+  private final WatchService watchService;
+
+  private final Map<WatchKey, Path> watchedDirectoryMap = Maps.newHashMap();
+
+  private final Set<File> watchedFileSet = Sets.newHashSet();
+
+
+  /**
+   * Constructor.
+   *
+   * @param args
+   *          The command-line arguments without the watch flag.
+   * @param out
+   *          The stream for the compiled code.
+   * @param err
+   *          The stream for the diagnostics.
+   * @throws IOException
+   */
+  public CampCompileWatcher(String[] args, PrintStream out, PrintStream err) throws IOException {
+    this.args = args;
+    this.out = out;
+    this.err = err;
+    this.watchService = FileSystems.getDefault().newWatchService();
+  }
+
+
+  /**
+   * Compile and wait for the modification, until the thread is interrupted.
+   *
+   * @throws IOException
+   */
+  public void watch() throws IOException {
+    try {
+      while (true) {
+        long start = System.currentTimeMillis();
+        int status = new CampCommandLineRunner(args, out, err, inputCache, moduleCache).compile();
+        inputCache.saveSnapshot();
+        updateWatchedFiles();
+        err.println("Compiled with exit status " + status + " in "
+            + (System.currentTimeMillis() - start) + "ms. Watching "
+            + watchedFileSet.size() + " files for changes.");
+
+        for (File file : waitForChanges()) {
+          inputCache.removeSourceFile(file);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      watchService.close();
+    }
+  }
+
+
+  /**
+   * Watch the files which are read by the last compilation and the flagfiles.
+   */
+  private void updateWatchedFiles() throws IOException {
+    watchedFileSet.clear();
+    watchedFileSet.addAll(inputCache.getSourceFiles());
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals(FLAGFILE) && i + 1 < args.length) {
+        watchedFileSet.add(CampInputCache.toAbsoluteFile(args[++i]));
+      } else if (args[i].startsWith(FLAGFILE + "=")) {
+        String path = args[i].substring(FLAGFILE.length() + 1);
+        watchedFileSet.add(CampInputCache.toAbsoluteFile(path));
+      }
+    }
+
+    Set<Path> directories = Sets.newHashSet(watchedDirectoryMap.values());
+    for (File file : watchedFileSet) {
+      Path directory = file.getParentFile().toPath();
+      if (directories.add(directory)) {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchedDirectoryMap.put(key, directory);
+      }
+    }
+  }
+
+
+  /**
+   * Block until some of the watched files are modified.
+   *
+   * @return The modified files.
+   */
+  private Set<File> waitForChanges() throws InterruptedException {
+    Set<File> changed = Sets.newHashSet();
+    WatchKey key = watchService.take();
+    while (true) {
+      collectChanges(key, changed);
+      key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+      if (key == null) {
+        if (!changed.isEmpty()) {
+          return changed;
+        }
+        key = watchService.take();
+      }
+    }
+  }
+
+
+  /**
+   * Collect the watched files from the events of the key.
+   */
+  private void collectChanges(WatchKey key, Set<File> changed) {
+    Path directory = watchedDirectoryMap.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Some events are lost, so read all files again.
+        changed.addAll(watchedFileSet);
+      } else if (directory != null) {
+        File file = directory.resolve((Path) event.context()).toFile();
+        if (watchedFileSet.contains(file)) {
+          changed.add(file);
+        }
+      }
+    }
+    key.reset();
+  }
+}
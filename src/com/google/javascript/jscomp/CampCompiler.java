@@ -1,20 +1,110 @@
 package com.google.javascript.jscomp;
 
 import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.javascript.rhino.Node;
 
 
 
 
 public class CampCompiler extends Compiler {
 
+  private final CampContext campContext;
+
+  private List<SourceFile> sharedExterns;
+
+  private CampInputCache inputCache;
+
+  private final Map<String, SourceFile> sharedExternMap = Maps.newHashMap();
+
+
   public CampCompiler(PrintStream printStream) {
     super(printStream);
-    CampUtil.setCompiler(this);
+    this.campContext = new CampContext(this);
+  }
+
+
+  /**
+   * Return the context of the camp passes of this compilation.
+   * 
+   * @return The context.
+   */
+  CampContext getCampContext() {
+    return this.campContext;
+  }
+
+
+  /**
+   * Set the externs which are added from the shared parsed trees instead of
+   * being parsed by this compiler. These externs are added before the externs
+   * passed to the compile method.
+   *
+   * @param externs
+   *          The extern files.
+   * @param inputCache
+   *          The cache of the parsed externs.
+   */
+  void setSharedExterns(List<SourceFile> externs, CampInputCache inputCache) {
+    this.sharedExterns = externs;
+    this.inputCache = inputCache;
+  }
+
+
+  @Override
+  Node parseInputs() {
+    Node root = super.parseInputs();
+    if (root != null && sharedExterns != null) {
+      addSharedExterns();
+      if (hasErrors()) {
+        return null;
+      }
+    }
+    return root;
+  }
+
+
+  /**
+   * Add the copies of the shared extern trees. The extern that can not be
+   * shared is parsed by this compiler, so the parse errors are reported as
+   * usual.
+   */
+  private void addSharedExterns() {
+    // newExternInput inserts the input at the front of the externs.
+    for (SourceFile file : Lists.reverse(sharedExterns)) {
+      sharedExternMap.put(file.getName(), file);
+      Node script = inputCache.getExternRoot(file, options);
+      if (script == null) {
+        script = new CompilerInput(file, true).getAstRoot(this);
+        if (script == null) {
+          continue;
+        }
+      }
+      Node root = newExternInput(file.getName()).getAstRoot(this);
+      root.setJSDocInfo(script.getJSDocInfo());
+      if (script.hasChildren()) {
+        root.addChildrenToBack(script.removeChildren());
+      }
+    }
+  }
+
+
+  /**
+   * The inputs of the shared externs are synthetic inputs which have no code,
+   * so return the original extern file to show the source excerpt.
+   */
+  @Override
+  SourceFile getSourceFileByName(String sourceName) {
+    SourceFile file = sharedExternMap.get(sourceName);
+    return file != null ? file : super.getSourceFileByName(sourceName);
   }
 
 
   @Override
   PassConfig createPassConfigInternal() {
-    return new CampPassConfig(options);
+    return new CampPassConfig(options, campContext);
   }
 }
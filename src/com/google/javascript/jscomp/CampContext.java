@@ -0,0 +1,214 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.Preconditions;
+import com.google.javascript.rhino.Node;
+
+/**
+ * The per-compilation context of the camp passes. Each compiler owns one
+ * context, so diagnostics and code changes are always reported to the
+ * compiler that is running the pass, even if many compilers run in one jvm.
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampContext {
+
+  /**
+   * The system property of the number of the threads that collect and
+   * rewrite the camp modules.
+   */
+  static final String PARALLELISM_PROPERTY = "camp.module.parallelism";
+
+  private final AbstractCompiler compiler;
+
+  private CampModuleTransformInfo campModuleTransformInfo;
+
+  private FactoryInjectorInfo factoryInjectorInfo;
+
+  private CampModuleCache moduleCache;
+
+  private CampModuleIndex moduleIndex;
+
+  private int parallelism;
+
+  private CampMarkerFilter markerFilter;
+
+
+  /**
+   * Constructor.
+   *
+   * @param compiler
+   *          The compiler that owns this context.
+   */
+  public CampContext(AbstractCompiler compiler) {
+    Preconditions.checkNotNull(compiler);
+    this.compiler = compiler;
+    this.parallelism = Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, 1).intValue());
+    this.moduleIndex = CampModuleIndex.getDefault();
+  }
+
+
+  /**
+   * Return the compiler.
+   *
+   * @return The compiler.
+   */
+  public AbstractCompiler getCompiler() {
+    return this.compiler;
+  }
+
+
+  /**
+   * Return the module information collected by the CampModuleProcessor.
+   *
+   * @return The module information, or null if the modules are not processed
+   *         yet.
+   */
+  public CampModuleTransformInfo getCampModuleTransformInfo() {
+    return this.campModuleTransformInfo;
+  }
+
+
+  /**
+   * Set the module information, that is updated by the following hot swaps.
+   * The ModuleInfo are released when the modules are rewritten, so only the
+   * module ids are kept between the hot swaps.
+   *
+   * @param campModuleTransformInfo
+   *          The module information of the whole program.
+   */
+  public void setCampModuleTransformInfo(CampModuleTransformInfo campModuleTransformInfo) {
+    this.campModuleTransformInfo = campModuleTransformInfo;
+  }
+
+
+  /**
+   * Return the constructor registry collected by the FactoryInjectorProcessor.
+   *
+   * @return The registry, or null if the factories are not injected yet.
+   */
+  public FactoryInjectorInfo getFactoryInjectorInfo() {
+    return this.factoryInjectorInfo;
+  }
+
+
+  /**
+   * Set the constructor registry, that is updated by the following hot swaps.
+   * The nodes of the dependency injection calls are released when the calls
+   * are rewritten.
+   *
+   * @param factoryInjectorInfo
+   *          The registry of the whole program.
+   */
+  public void setFactoryInjectorInfo(FactoryInjectorInfo factoryInjectorInfo) {
+    this.factoryInjectorInfo = factoryInjectorInfo;
+  }
+
+
+  /**
+   * Return the cache of the rewritten modules kept between the compilations.
+   *
+   * @return The cache, or null if the modules are not cached.
+   */
+  public CampModuleCache getModuleCache() {
+    return this.moduleCache;
+  }
+
+
+  /**
+   * Set the cache of the rewritten modules.
+   *
+   * @param moduleCache
+   *          The cache shared with the previous compilations of the same
+   *          target.
+   */
+  public void setModuleCache(CampModuleCache moduleCache) {
+    this.moduleCache = moduleCache;
+  }
+
+
+  /**
+   * Return the index of the modules of the previous compilations. The default
+   * is given by the system property 'camp.module.index'.
+   *
+   * @return The index, or null if the modules are not indexed.
+   */
+  public CampModuleIndex getModuleIndex() {
+    return this.moduleIndex;
+  }
+
+
+  /**
+   * Set the index of the modules, that is updated with the modules of each
+   * full compilation.
+   *
+   * @param moduleIndex
+   *          The index shared with the other compilations, or null.
+   */
+  public void setModuleIndex(CampModuleIndex moduleIndex) {
+    this.moduleIndex = moduleIndex;
+  }
+
+
+  /**
+   * Return the number of the threads that collect and rewrite the camp
+   * modules.
+   *
+   * @return The parallelism, that is 1 if the modules are processed
+   *         sequentially.
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+
+  /**
+   * Set the number of the threads that collect and rewrite the camp modules.
+   * The default is given by the system property 'camp.module.parallelism'.
+   *
+   * @param parallelism
+   *          The parallelism.
+   */
+  public void setParallelism(int parallelism) {
+    Preconditions.checkArgument(parallelism > 0);
+    this.parallelism = parallelism;
+  }
+
+
+  /**
+   * Return the filter of the scripts that can not contain the camp markers.
+   *
+   * @return The filter, that has the skip counts of this compilation.
+   */
+  public synchronized CampMarkerFilter getMarkerFilter() {
+    if (this.markerFilter == null) {
+      this.markerFilter = new CampMarkerFilter(this.compiler);
+    }
+    return this.markerFilter;
+  }
+
+
+  /**
+   * Report error.
+   *
+   * @param n
+   *          The error occurrence node.
+   * @param diagnosticType
+   *          Error message.
+   * @param arguments
+   *          Error message arguments.
+   */
+  public void report(Node n, DiagnosticType diagnosticType, String... arguments) {
+    JSError error = JSError.make(
+        n.getSourceFileName(), n, diagnosticType, arguments);
+    this.compiler.report(error);
+  }
+
+
+  /**
+   * Report code has changed.
+   */
+  public void reportCodeChange() {
+    this.compiler.reportCodeChange();
+  }
+}
@@ -0,0 +1,245 @@
+package com.google.javascript.jscomp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * The serialized snapshot of the parsed default externs. Parsing the bundled
+ * externs.zip is the largest fixed cost of a compilation, so the parsed trees
+ * are written to the snapshot file once and read by the following runs.
+ *
+ * <p>
+ * The snapshot is keyed by the content hash of externs.zip and the compiler
+ * version. A snapshot with other key, or one that can not be read, is
+ * treated as stale and is rebuilt by the next run.
+ * </p>
+ *
+ * The snapshot is enabled by the system property 'camp.externs.snapshot'
+ * that is the location of the snapshot file. The snapshot is disabled by
+ * default, because the file must be writable only by the user who runs the
+ * compiler. The file is read by the CampObjectInputStream, that reads only
+ * the classes of the parsed trees.
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampExternsSnapshot {
+
+  static final String SNAPSHOT_PROPERTY = "camp.externs.snapshot";
+
+  static final String DEFAULT_EXTERNS_PREFIX = "externs.zip//";
+
+  private static final String EXTERNS_RESOURCE = "/externs.zip";
+
+  // The java serialization of the ast is deeply recursive.
+  private static final long STACK_SIZE = 64L * 1024 * 1024;
+
+  private final File file;
+
+  private String key;
+
+  private FutureTask<Map<String, CampInputCache.ExternTemplate>> loader;
+
+
+  /**
+   * Constructor.
+   *
+   * @param file
+   *          The snapshot file.
+   */
+  public CampExternsSnapshot(File file) {
+    this.file = file;
+  }
+
+
+  /**
+   * Return the snapshot of the location given by the system property.
+   *
+   * @return The snapshot, or null if the snapshot is disabled.
+   */
+  public static CampExternsSnapshot createDefault() {
+    String path = System.getProperty(SNAPSHOT_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new CampExternsSnapshot(new File(path));
+  }
+
+
+  /**
+   * Check whether the extern is one of the bundled default externs or not.
+   *
+   * @param file
+   *          The extern file.
+   * @return true if the extern is read from externs.zip.
+   */
+  public static boolean isDefaultExtern(SourceFile file) {
+    return file.getName().startsWith(DEFAULT_EXTERNS_PREFIX);
+  }
+
+
+  /**
+   * Start reading the snapshot file in the background, so the reading
+   * overlaps the other startup work of the compiler.
+   */
+  public synchronized void prefetch() {
+    if (loader != null) {
+      return;
+    }
+    loader = new FutureTask<Map<String, CampInputCache.ExternTemplate>>(
+        new Callable<Map<String, CampInputCache.ExternTemplate>>() {
+          @Override
+          public Map<String, CampInputCache.ExternTemplate> call() {
+            return read();
+          }
+        });
+    Thread thread = new Thread(null, loader, "camp-externs-snapshot", STACK_SIZE);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Return the parsed trees read from the snapshot file.
+   *
+   * @return The templates keyed by the CampInputCache key, or null if the
+   *         snapshot is missing or stale.
+   */
+  public Map<String, CampInputCache.ExternTemplate> load() {
+    prefetch();
+    try {
+      return loader.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Read the snapshot file.
+   */
+  private Map<String, CampInputCache.ExternTemplate> read() {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    Object ret = null;
+    try {
+      ObjectInputStream in = new CampObjectInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      try {
+        if (in.readUTF().equals(getKey())) {
+          ret = in.readObject();
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // Stale or broken snapshot.
+    } catch (ClassNotFoundException e) {
+      // Written by other version.
+    }
+
+    if (!(ret instanceof Map)) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, CampInputCache.ExternTemplate> templates =
+        (Map<String, CampInputCache.ExternTemplate>) ret;
+    return templates;
+  }
+
+
+  /**
+   * Write the parsed trees to the snapshot file. The file is replaced at
+   * once, so the concurrent runs never read the partially written snapshot.
+   * The failure is ignored because the snapshot is only a cache.
+   *
+   * @param templates
+   *          The templates keyed by the CampInputCache key.
+   */
+  public void save(final Map<String, CampInputCache.ExternTemplate> templates) {
+    runWithLargeStack(new Runnable() {
+      @Override
+      public void run() {
+        File temp = null;
+        try {
+          File dir = file.getAbsoluteFile().getParentFile();
+          temp = File.createTempFile(file.getName(), ".tmp", dir);
+          ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+              new FileOutputStream(temp)));
+          try {
+            out.writeUTF(getKey());
+            out.writeObject(templates);
+          } finally {
+            out.close();
+          }
+          Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+          if (temp != null) {
+            temp.delete();
+          }
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Return the key of the snapshot.
+   *
+   * @return The sha-1 of externs.zip and the compiler version.
+   */
+  private synchronized String getKey() throws IOException {
+    if (key == null) {
+      InputStream in = CommandLineRunner.class.getResourceAsStream(EXTERNS_RESOURCE);
+      if (in == null) {
+        throw new IOException(EXTERNS_RESOURCE + " is not found.");
+      }
+      try {
+        key = Hashing.sha1().hashBytes(ByteStreams.toByteArray(in)).toString() + "|"
+            + Compiler.getReleaseVersion();
+      } finally {
+        in.close();
+      }
+    }
+    return key;
+  }
+
+
+  /**
+   * Run the task in the thread which has enough stack to serialize the ast.
+   *
+   * @param task
+   *          The task that serializes or deserializes the ast.
+   */
+  static void runWithLargeStack(Runnable task) {
+    Thread thread = new Thread(null, task, "camp-externs-snapshot", STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
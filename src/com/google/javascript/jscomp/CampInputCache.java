@@ -0,0 +1,268 @@
+package com.google.javascript.jscomp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.javascript.rhino.Node;
+
+/**
+ * The inputs shared between the targets of a batch compilation. The source
+ * files are read once, and the externs are parsed once and handed to each
+ * target as a copy of the parsed tree.
+ *
+ * <p>
+ * The trees of the js inputs are not shared, because the camp passes rewrite
+ * the jsdoc type nodes of the inputs in place and the JSDocInfo can not be
+ * copied deeply. The externs are never touched by the camp passes.
+ * </p>
+ *
+ * <p>
+ * The parsed default externs are also restored from and written to the
+ * CampExternsSnapshot, so a run need not parse externs.zip again.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampInputCache {
+
+  private final ConcurrentMap<String, SourceFile> sourceFileMap = Maps.newConcurrentMap();
+
+  private final Map<String, ExternTemplate> externTemplateMap = Maps.newHashMap();
+
+  private final CampExternsSnapshot snapshot;
+
+  private boolean snapshotLoaded = false;
+
+  private boolean snapshotDirty = false;
+
+
+  /**
+   * The parsed tree of an extern file. The tree is never modified after
+   * parsing, so it can be copied from many threads.
+   */
+  static final class ExternTemplate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String code;
+
+    private final Node root;
+
+
+    public ExternTemplate(String code, Node root) {
+      this.code = code;
+      this.root = root;
+    }
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param snapshot
+   *          The snapshot of the parsed default externs, or null.
+   */
+  public CampInputCache(CampExternsSnapshot snapshot) {
+    this.snapshot = snapshot;
+    if (snapshot != null) {
+      snapshot.prefetch();
+    }
+  }
+
+
+  /**
+   * Return the source file that is read first by the key.
+   *
+   * @param key
+   *          The key of the source file.
+   * @param file
+   *          The source file that is created by the caller.
+   * @return The shared source file.
+   */
+  public SourceFile getSourceFile(String key, SourceFile file) {
+    SourceFile cached = sourceFileMap.putIfAbsent(key, file);
+    return cached != null ? cached : file;
+  }
+
+
+  /**
+   * Return the files which are read from the disk and cached.
+   *
+   * @return The absolute files.
+   */
+  public Set<File> getSourceFiles() {
+    Set<File> ret = Sets.newHashSet();
+    for (SourceFile file : sourceFileMap.values()) {
+      if (!CampExternsSnapshot.isDefaultExtern(file)) {
+        ret.add(toAbsoluteFile(file.getName()));
+      }
+    }
+    return ret;
+  }
+
+
+  /**
+   * Remove the cached source file, so the file is read again by the next
+   * compilation.
+   *
+   * @param file
+   *          The absolute file.
+   */
+  public void removeSourceFile(File file) {
+    Iterator<SourceFile> iterator = sourceFileMap.values().iterator();
+    while (iterator.hasNext()) {
+      if (toAbsoluteFile(iterator.next().getName()).equals(file)) {
+        iterator.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Remove all cached source files, so the files are read again by the next
+   * compilation. The parsed externs are kept, and they are used again if the
+   * code of the file is not modified.
+   */
+  public void clearSourceFiles() {
+    sourceFileMap.clear();
+  }
+
+
+  /**
+   * Return the normalized absolute file of the path.
+   *
+   * @param path
+   *          The path of the file.
+   * @return The absolute file.
+   */
+  static File toAbsoluteFile(String path) {
+    return new File(path).toPath().toAbsolutePath().normalize().toFile();
+  }
+
+
+  /**
+   * Return the copy of the parsed extern tree.
+   *
+   * @param file
+   *          The extern file.
+   * @param options
+   *          The options of the target.
+   * @return The copy of the parsed SCRIPT node, or null if the parser reports
+   *         any diagnostics for the file.
+   */
+  public Node getExternRoot(SourceFile file, CompilerOptions options) {
+    String code;
+    try {
+      code = file.getCode();
+    } catch (IOException e) {
+      return null;
+    }
+
+    String key = createKey(file, options);
+    ExternTemplate template;
+    synchronized (externTemplateMap) {
+      template = externTemplateMap.get(key);
+      if (template == null && isSnapshotTarget(file) && !snapshotLoaded) {
+        snapshotLoaded = true;
+        Map<String, ExternTemplate> templates = snapshot.load();
+        if (templates != null) {
+          externTemplateMap.putAll(templates);
+          template = externTemplateMap.get(key);
+        }
+      }
+      if (template != null && !template.code.equals(code)) {
+        // The file is modified after it is parsed.
+        template = null;
+      }
+      if (template == null) {
+        template = new ExternTemplate(code, parse(file, options));
+        externTemplateMap.put(key, template);
+        snapshotDirty |= isSnapshotTarget(file);
+      }
+    }
+
+    if (template.root == null) {
+      return null;
+    }
+    return template.root.cloneTree();
+  }
+
+
+  /**
+   * Write the parsed default externs to the snapshot if some of them are
+   * parsed by this cache.
+   */
+  public void saveSnapshot() {
+    Map<String, ExternTemplate> templates = Maps.newHashMap();
+    synchronized (externTemplateMap) {
+      if (!snapshotDirty) {
+        return;
+      }
+      snapshotDirty = false;
+      for (Map.Entry<String, ExternTemplate> entry : externTemplateMap.entrySet()) {
+        if (entry.getKey().startsWith(CampExternsSnapshot.DEFAULT_EXTERNS_PREFIX)) {
+          templates.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    snapshot.save(templates);
+  }
+
+
+  /**
+   * Check whether the extern is stored in the snapshot or not.
+   */
+  private boolean isSnapshotTarget(SourceFile file) {
+    return snapshot != null && CampExternsSnapshot.isDefaultExtern(file);
+  }
+
+
+  /**
+   * Create the key from the file name and the options which change the
+   * result of the parsing.
+   */
+  private String createKey(SourceFile file, CompilerOptions options) {
+    CodingConvention convention = options.getCodingConvention();
+    return file.getName() + "|" + options.getLanguageIn() + "|" + options.ideMode + "|"
+        + options.acceptConstKeyword + "|" + options.extraAnnotationNames + "|"
+        + (convention != null ? convention.getClass().getName() : null);
+  }
+
+
+  /**
+   * Parse the extern file by the compiler owned by this cache.
+   *
+   * @return The SCRIPT node, or null if the parser reports errors or
+   *         warnings. Such a file is parsed by each target to report them.
+   */
+  private Node parse(SourceFile file, CompilerOptions options) {
+    CompilerOptions parserOptions = new CompilerOptions();
+    parserOptions.setLanguageIn(options.getLanguageIn());
+    parserOptions.ideMode = options.ideMode;
+    parserOptions.acceptConstKeyword = options.acceptConstKeyword;
+    parserOptions.extraAnnotationNames = options.extraAnnotationNames;
+    parserOptions.setCodingConvention(options.getCodingConvention());
+
+    Compiler compiler = new Compiler(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {}
+    }));
+    compiler.init(Lists.newArrayList(file), Lists.<SourceFile> newArrayList(), parserOptions);
+
+    Node root = compiler.getExternsInOrder().get(0).getAstRoot(compiler);
+    if (root == null || compiler.getErrorCount() > 0 || compiler.getWarningCount() > 0) {
+      return null;
+    }
+    return root;
+  }
+}
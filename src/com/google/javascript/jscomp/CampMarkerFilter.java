@@ -0,0 +1,126 @@
+package com.google.javascript.jscomp;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.MapMaker;
+import com.google.javascript.rhino.Node;
+
+/**
+ * The filter of the scripts that can not contain the camp markers like
+ * 'camp.module', 'camp.using' and 'camp.utils.dependencies.inject'. All
+ * markers are the properties of the name 'camp', so the script is marker free
+ * if its source code has no 'camp' and no unicode escape that may spell it.
+ *
+ * <p>
+ * The CampModuleProcessor skips the marker free scripts, and the
+ * FactoryInjectorProcessor traverses only the global code of them, because
+ * the constructors and their aliases are still collected from them. The
+ * numbers of the skipped scripts are counted for the confirmation.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampMarkerFilter {
+
+  private static final String MARKER_ROOT = "camp";
+
+  private static final String UNICODE_ESCAPE = "\\u";
+
+  private final AbstractCompiler compiler;
+
+  /**
+   * The scan results of the source files. The source files are weakly
+   * referenced, so the inputs of the finished compilations are not retained.
+   */
+  private final Map<SourceFile, Boolean> markerMap = new MapMaker().weakKeys().makeMap();
+
+  private int moduleSkipCount = 0;
+
+  private int injectorSkipCount = 0;
+
+
+  /**
+   * Constructor.
+   *
+   * @param compiler
+   *          The compiler that has the inputs.
+   */
+  public CampMarkerFilter(AbstractCompiler compiler) {
+    this.compiler = compiler;
+  }
+
+
+  /**
+   * Check whether the script may contain the camp markers or not. The script
+   * whose source code is not available may contain the markers.
+   *
+   * @param script
+   *          The SCRIPT node.
+   * @return false if the script can not contain the markers, otherwise true.
+   */
+  public synchronized boolean mayContainMarkers(Node script) {
+    CompilerInput input = script.getInputId() != null
+        ? compiler.getInput(script.getInputId()) : null;
+    if (input == null || input.getSourceFile() == null) {
+      return true;
+    }
+
+    SourceFile file = input.getSourceFile();
+    Boolean ret = markerMap.get(file);
+    if (ret == null) {
+      ret = Boolean.valueOf(scan(file));
+      markerMap.put(file, ret);
+    }
+    return ret.booleanValue();
+  }
+
+
+  private static boolean scan(SourceFile file) {
+    try {
+      String code = file.getCode();
+      return code.contains(MARKER_ROOT) || code.contains(UNICODE_ESCAPE);
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+
+  /**
+   * Count the script skipped by the CampModuleProcessor.
+   */
+  public synchronized void addModuleSkip() {
+    this.moduleSkipCount++;
+  }
+
+
+  /**
+   * Return the number of the scripts skipped by the CampModuleProcessor.
+   *
+   * @return The number of the scripts.
+   */
+  public synchronized int getModuleSkipCount() {
+    return this.moduleSkipCount;
+  }
+
+
+  /**
+   * Count the script whose functions are skipped by the
+   * FactoryInjectorProcessor.
+   */
+  public synchronized void addInjectorSkip() {
+    this.injectorSkipCount++;
+  }
+
+
+  /**
+   * Return the number of the scripts whose functions are skipped by the
+   * FactoryInjectorProcessor.
+   *
+   * @return The number of the scripts.
+   */
+  public synchronized int getInjectorSkipCount() {
+    return this.injectorSkipCount;
+  }
+}
@@ -0,0 +1,374 @@
+package com.google.javascript.jscomp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.javascript.rhino.Node;
+import com.google.javascript.rhino.jstype.StaticSourceFile;
+
+/**
+ * The camp modules rewritten by the CampModuleProcessor, that are kept
+ * between the compilations of the same target. The entry of a script is
+ * invalidated when the content hash of the script is changed, so the
+ * following compilation collects and rewrites only the modified scripts.
+ *
+ * <p>
+ * The module local variables are renamed with the module id, that is the
+ * number of the modules found before the script. So the entry is used only if
+ * the script gets the same first module id, and the result is always same as
+ * the result of the full collection.
+ * </p>
+ *
+ * <p>
+ * The trees are kept as the serialized bytes detached from the program, so
+ * the cache kept by the compile daemon and the watch mode does not keep the
+ * trees of the previous compilations reachable.
+ * </p>
+ *
+ * <p>
+ * The entries are also written to the CampModuleDiskCache if it is given, so
+ * the following builds in other jvm can restore them.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampModuleCache {
+
+  private final Map<String, Entry> entryMap = Maps.newHashMap();
+
+  private final CampModuleDiskCache diskCache;
+
+
+  /**
+   * The rewritten tree of a script. The tree is kept as the serialized bytes,
+   * that refer no node and no JSDocInfo of the compilation, so the entry does
+   * not keep the previous program reachable. Each restore reads a new copy of
+   * the tree.
+   */
+  static final class Entry implements Serializable {
+    private static final long serialVersionUID = 3L;
+
+    private final String hash;
+
+    private final int firstModuleId;
+
+    private final int moduleCount;
+
+    private final byte[] tree;
+
+    private final CampModuleIndex.ModuleRecord moduleRecord;
+
+
+    private Entry(String hash, int firstModuleId, int moduleCount, byte[] tree,
+        CampModuleIndex.ModuleRecord moduleRecord) {
+      this.hash = hash;
+      this.firstModuleId = firstModuleId;
+      this.moduleCount = moduleCount;
+      this.tree = tree;
+      this.moduleRecord = moduleRecord;
+    }
+
+
+    /**
+     * Check whether the entry is made from the same content and the same
+     * module id or not.
+     *
+     * @param hash
+     *          The content hash of the script.
+     * @param firstModuleId
+     *          The module id of the first module of the script.
+     * @return true if the entry can be used for the script.
+     */
+    public boolean matches(String hash, int firstModuleId) {
+      return this.hash.equals(hash) && this.firstModuleId == firstModuleId;
+    }
+
+
+    public String getHash() {
+      return this.hash;
+    }
+
+
+    public int getFirstModuleId() {
+      return this.firstModuleId;
+    }
+
+
+    /**
+     * Return the record of the CampModuleIndex, so the restored script is
+     * indexed without collecting it again.
+     *
+     * @return The record, or null if the script has no module.
+     */
+    public CampModuleIndex.ModuleRecord getModuleRecord() {
+      return this.moduleRecord;
+    }
+
+
+    /**
+     * Return the number of the modules declared in the script.
+     *
+     * @return The number of the modules.
+     */
+    public int getModuleCount() {
+      return this.moduleCount;
+    }
+
+
+    /**
+     * Replace the children of the script by the copy of the rewritten tree.
+     *
+     * @param target
+     *          The SCRIPT node of the current compilation.
+     * @return true if the tree is restored, or false if the tree can not be
+     *         read and the target is not changed.
+     */
+    public boolean restore(Node target) {
+      if (tree == null) {
+        return true;
+      }
+      Node copy = readTree(tree);
+      if (copy == null) {
+        return false;
+      }
+      target.removeChildren();
+      if (copy.hasChildren()) {
+        Node children = copy.removeChildren();
+        setStaticSourceFile(children, target.getStaticSourceFile());
+        target.addChildrenToBack(children);
+      }
+      return true;
+    }
+
+
+    /**
+     * The read nodes refer the empty source file written instead of the
+     * source file of the cached compilation, so let them refer the source
+     * file of the current compilation.
+     */
+    private void setStaticSourceFile(Node n, StaticSourceFile sourceFile) {
+      for (Node sibling = n; sibling != null; sibling = sibling.getNext()) {
+        if (sibling.getStaticSourceFile() != null) {
+          sibling.setStaticSourceFile(sourceFile);
+        }
+        if (sibling.hasChildren()) {
+          setStaticSourceFile(sibling.getFirstChild(), sourceFile);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * The stream that writes only the tree of the script. The JSDocInfo refers
+   * the node of the whole program by the associated node, and the node refers
+   * the source file that has the code, so they are not written as they are.
+   */
+  private static final class TreeOutputStream extends ObjectOutputStream {
+    private final Node script;
+
+    private final Map<SourceFile, SourceFile> sourceFileMap = Maps.newIdentityHashMap();
+
+
+    public TreeOutputStream(OutputStream out, Node script) throws IOException {
+      super(out);
+      this.script = script;
+      enableReplaceObject(true);
+    }
+
+
+    @Override
+    protected Object replaceObject(Object obj) {
+      if (obj instanceof Node) {
+        // The nodes of the program out of the script, like the parent and the
+        // siblings of the script, are not written. The type expressions of
+        // the JSDocInfo are the trees of their own.
+        Node root = (Node) obj;
+        while (root.getParent() != null) {
+          if (root == script) {
+            return obj;
+          }
+          root = root.getParent();
+        }
+        if (root != script && (root.isScript() || root.isBlock())) {
+          return null;
+        }
+      } else if (obj instanceof SourceFile) {
+        // The source file is replaced by the current one when restored.
+        SourceFile file = (SourceFile) obj;
+        SourceFile replaced = sourceFileMap.get(file);
+        if (replaced == null) {
+          replaced = SourceFile.fromCode(file.getName(), "");
+          sourceFileMap.put(file, replaced);
+        }
+        return replaced;
+      }
+      return obj;
+    }
+  }
+
+
+  /**
+   * Write the script as the bytes detached from the program.
+   *
+   * @return The bytes, or null if the script can not be written.
+   */
+  private static byte[] writeTree(final Node script) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final boolean[] written = new boolean[1];
+    CampExternsSnapshot.runWithLargeStack(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ObjectOutputStream out = new TreeOutputStream(bytes, script);
+          try {
+            out.writeObject(script);
+          } finally {
+            out.close();
+          }
+          written[0] = true;
+        } catch (IOException e) {
+          // The script is not cached.
+        }
+      }
+    });
+    return written[0] ? bytes.toByteArray() : null;
+  }
+
+
+  /**
+   * Read the copy of the script written by writeTree.
+   *
+   * @return The SCRIPT node, or null if the bytes can not be read.
+   */
+  private static Node readTree(final byte[] tree) {
+    final Object[] ret = new Object[1];
+    CampExternsSnapshot.runWithLargeStack(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ObjectInputStream in = new CampObjectInputStream(new ByteArrayInputStream(tree));
+          try {
+            ret[0] = in.readObject();
+          } finally {
+            in.close();
+          }
+        } catch (IOException e) {
+          // Broken entry.
+        } catch (ClassNotFoundException e) {
+          // Written by other version.
+        }
+      }
+    });
+    return ret[0] instanceof Node ? (Node) ret[0] : null;
+  }
+
+
+  /**
+   * Constructor of the cache kept in memory.
+   */
+  public CampModuleCache() {
+    this(null);
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param diskCache
+   *          The on-disk store of the entries, or null.
+   */
+  public CampModuleCache(CampModuleDiskCache diskCache) {
+    this.diskCache = diskCache;
+  }
+
+
+  /**
+   * Return the cache with the on-disk store given by the system properties.
+   *
+   * @return The cache, or null if the on-disk store is disabled.
+   */
+  public static CampModuleCache createDefault() {
+    CampModuleDiskCache diskCache = CampModuleDiskCache.createDefault();
+    return diskCache != null ? new CampModuleCache(diskCache) : null;
+  }
+
+
+  /**
+   * Return the entry of the script.
+   *
+   * @param sourceName
+   *          The source file name of the script.
+   * @param hash
+   *          The content hash of the script.
+   * @param firstModuleId
+   *          The module id of the first module of the script.
+   * @return The entry, or null if the script is not cached or modified.
+   */
+  public synchronized Entry get(String sourceName, String hash, int firstModuleId) {
+    Entry entry = entryMap.get(sourceName);
+    if (entry != null && entry.matches(hash, firstModuleId)) {
+      return entry;
+    }
+    if (diskCache != null) {
+      entry = diskCache.read(sourceName, hash, firstModuleId);
+      if (entry != null) {
+        entryMap.put(sourceName, entry);
+        return entry;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Keep the rewritten tree of the script.
+   *
+   * @param sourceName
+   *          The source file name of the script.
+   * @param hash
+   *          The content hash of the script.
+   * @param firstModuleId
+   *          The module id of the first module of the script.
+   * @param moduleCount
+   *          The number of the modules declared in the script.
+   * @param script
+   *          The rewritten SCRIPT node, that is written as the bytes.
+   * @param moduleRecord
+   *          The record of the CampModuleIndex, or null if the script has no
+   *          module.
+   */
+  public synchronized void put(String sourceName, String hash, int firstModuleId,
+      int moduleCount, Node script, CampModuleIndex.ModuleRecord moduleRecord) {
+    byte[] tree = null;
+    if (moduleCount > 0) {
+      tree = writeTree(script);
+      if (tree == null) {
+        return;
+      }
+    }
+    Entry entry = new Entry(hash, firstModuleId, moduleCount, tree, moduleRecord);
+    entryMap.put(sourceName, entry);
+    if (diskCache != null) {
+      diskCache.write(sourceName, entry);
+    }
+  }
+
+
+  /**
+   * Remove the old files of the on-disk store.
+   */
+  public void evict() {
+    if (diskCache != null) {
+      diskCache.evict();
+    }
+  }
+}
@@ -8,4 +8,10 @@ public class CampModuleConsts {
   public static final String GOOG_REQUIRE = "goog.require";
 
   public static final String GOOG_PROVIDE = "goog.provide";
+
+  static final CampQualifiedNameMatcher CAMP_MODULE_CALL_MATCHER =
+      new CampQualifiedNameMatcher(CAMP_MODULE_CALL);
+
+  static final CampQualifiedNameMatcher USING_CALL_MATCHER =
+      new CampQualifiedNameMatcher(USING_CALL);
 }
@@ -0,0 +1,229 @@
+package com.google.javascript.jscomp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * The on-disk store of the CampModuleCache. The rewritten tree of each script
+ * is written to a file named by the hash of the source file name, the content
+ * hash and the first module id, so the repeated builds restore the unmodified
+ * scripts without collecting the module informations.
+ *
+ * <p>
+ * The files which are not used for the max age are removed, and the least
+ * recently used files are removed while the total size exceeds the max size.
+ * </p>
+ *
+ * The cache is enabled by the system property 'camp.module.cache' that is the
+ * directory of the cache. The limits are given by 'camp.module.cache.maxSize'
+ * in megabytes and 'camp.module.cache.maxAge' in days. The files are read by
+ * the CampObjectInputStream, that reads only the classes of the rewritten
+ * trees.
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampModuleDiskCache {
+
+  static final String DIRECTORY_PROPERTY = "camp.module.cache";
+
+  static final String MAX_SIZE_PROPERTY = "camp.module.cache.maxSize";
+
+  static final String MAX_AGE_PROPERTY = "camp.module.cache.maxAge";
+
+  private static final long DEFAULT_MAX_SIZE_MB = 256;
+
+  private static final long DEFAULT_MAX_AGE_DAYS = 7;
+
+  private static final String SUFFIX = ".camp";
+
+  private final File directory;
+
+  private final long maxSize;
+
+  private final long maxAge;
+
+
+  /**
+   * Constructor.
+   *
+   * @param directory
+   *          The directory of the cache files.
+   * @param maxSize
+   *          The max total size of the cache files in bytes.
+   * @param maxAge
+   *          The max age of the unused cache file in milliseconds.
+   */
+  public CampModuleDiskCache(File directory, long maxSize, long maxAge) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+  }
+
+
+  /**
+   * Return the cache of the location given by the system property.
+   *
+   * @return The cache, or null if the cache is disabled.
+   */
+  public static CampModuleDiskCache createDefault() {
+    String path = System.getProperty(DIRECTORY_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    long maxSize = Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE_MB).longValue();
+    long maxAge = Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE_DAYS).longValue();
+    return new CampModuleDiskCache(new File(path), maxSize * 1024 * 1024,
+        maxAge * 24 * 60 * 60 * 1000);
+  }
+
+
+  /**
+   * Read the entry of the script.
+   *
+   * @param sourceName
+   *          The source file name of the script.
+   * @param hash
+   *          The content hash of the script.
+   * @param firstModuleId
+   *          The module id of the first module of the script.
+   * @return The entry, or null if the entry is not found or broken.
+   */
+  public CampModuleCache.Entry read(String sourceName, String hash, int firstModuleId) {
+    final File file = getFile(sourceName, hash, firstModuleId);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    final Object[] ret = new Object[1];
+    CampExternsSnapshot.runWithLargeStack(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ObjectInputStream in = new CampObjectInputStream(new GZIPInputStream(
+              new BufferedInputStream(new FileInputStream(file))));
+          try {
+            if (in.readUTF().equals(Compiler.getReleaseVersion())) {
+              ret[0] = in.readObject();
+            }
+          } finally {
+            in.close();
+          }
+        } catch (IOException e) {
+          // Broken file.
+        } catch (ClassNotFoundException e) {
+          // Written by other version.
+        }
+      }
+    });
+
+    if (!(ret[0] instanceof CampModuleCache.Entry)) {
+      file.delete();
+      return null;
+    }
+    CampModuleCache.Entry entry = (CampModuleCache.Entry) ret[0];
+    if (!entry.matches(hash, firstModuleId)) {
+      return null;
+    }
+    // The modification time is the last used time of the entry.
+    file.setLastModified(System.currentTimeMillis());
+    return entry;
+  }
+
+
+  /**
+   * Write the entry of the script. The failure is ignored because the file
+   * is only a cache.
+   *
+   * @param sourceName
+   *          The source file name of the script.
+   * @param entry
+   *          The entry of the script.
+   */
+  public void write(String sourceName, final CampModuleCache.Entry entry) {
+    final File file = getFile(sourceName, entry.getHash(), entry.getFirstModuleId());
+    CampExternsSnapshot.runWithLargeStack(new Runnable() {
+      @Override
+      public void run() {
+        File temp = null;
+        try {
+          if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+          }
+          temp = File.createTempFile(file.getName(), ".tmp", directory);
+          ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+              new BufferedOutputStream(new FileOutputStream(temp))));
+          try {
+            out.writeUTF(Compiler.getReleaseVersion());
+            out.writeObject(entry);
+          } finally {
+            out.close();
+          }
+          Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+          if (temp != null) {
+            temp.delete();
+          }
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Remove the files which are older than the max age, and remove the least
+   * recently used files until the total size is less than the max size.
+   */
+  public void evict() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long diff = b.lastModified() - a.lastModified();
+        return diff > 0 ? 1 : diff < 0 ? -1 : 0;
+      }
+    });
+
+    long now = System.currentTimeMillis();
+    long totalSize = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(SUFFIX)) {
+        continue;
+      }
+      totalSize += file.length();
+      if (totalSize > maxSize || now - file.lastModified() > maxAge) {
+        file.delete();
+      }
+    }
+  }
+
+
+  /**
+   * Return the cache file of the script.
+   */
+  private File getFile(String sourceName, String hash, int firstModuleId) {
+    String key = Hashing.sha1()
+        .hashString(sourceName + "|" + hash + "|" + firstModuleId, Charsets.UTF_8).toString();
+    return new File(directory, key + SUFFIX);
+  }
+}
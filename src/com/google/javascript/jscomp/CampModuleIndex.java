@@ -0,0 +1,842 @@
+package com.google.javascript.jscomp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
+import com.google.javascript.rhino.Node;
+
+/**
+ * The index of the camp modules, that is memory-mapped from a file. The index
+ * has the exports, the 'camp.using' namespaces, the aliases and the type
+ * names of each module, so the modules which are not part of the current
+ * compilation are looked up without keeping their ModuleInfo on the heap.
+ * Only the looked up module is decoded.
+ *
+ * <p>
+ * The file is laid out as following, all integers are big endian.
+ * </p>
+ *
+ * <pre>
+ * header    : magic, version, module count
+ * directory : the offset of each module record, sorted by the module name
+ * records   : name, source name, exports, usings, aliases and type names of
+ *             each module
+ * strings   : the length and the UTF-8 bytes of each string
+ * </pre>
+ *
+ * Each section of a record is the number of the entries followed by the
+ * offsets of the strings, and an alias entry is the pair of the alias name
+ * and the qualified name. The offsets are integers, so the file is limited to
+ * 2GB.
+ *
+ * <p>
+ * The index is enabled by the system property 'camp.module.index' that is the
+ * path of the index. The path is the small file that has the name of the
+ * current data file in the same directory. Each update writes the new data
+ * file and replaces only the name, so the data file is never replaced while
+ * it is mapped. The data files of the previous updates are deleted by the
+ * following updates.
+ * </p>
+ *
+ * <p>
+ * The index is updated with the modules of each full compilation. The
+ * records of the source files of the compilation are replaced, so the
+ * modules which are renamed or deleted are dropped, and the other records are
+ * copied from the previous data file without decoding them. The data file is
+ * not written if no record is changed. The hot swapped modules are not
+ * written until the next full compilation.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampModuleIndex {
+
+  static final String FILE_PROPERTY = "camp.module.index";
+
+  private static final int MAGIC = 0x43414d50;
+
+  private static final int VERSION = 2;
+
+  private static final int HEADER_SIZE = 12;
+
+  private static final int MODULE_COUNT_OFFSET = 8;
+
+  private static final int EXPORTS = 0;
+
+  private static final int USINGS = 1;
+
+  private static final int ALIASES = 2;
+
+  private static final int TYPE_NAMES = 3;
+
+  private static final int SECTION_COUNT = 4;
+
+  /**
+   * The limit of the size of the index file, that has the name of the data
+   * file.
+   */
+  private static final int MAX_POINTER_SIZE = 1024;
+
+  private static final String DATA_FILE_SUFFIX = ".data";
+
+  private static final Comparator<byte[]> NAME_ORDER = UnsignedBytes.lexicographicalComparator();
+
+  private static final Comparator<ModuleRecord> RECORD_ORDER = new Comparator<ModuleRecord>() {
+    @Override
+    public int compare(ModuleRecord a, ModuleRecord b) {
+      return NAME_ORDER.compare(a.getEncodedName(), b.getEncodedName());
+    }
+  };
+
+  /**
+   * The indexes given by the system property, that are shared by the
+   * compilations in the same jvm.
+   */
+  private static final Map<File, CampModuleIndex> defaultIndexMap = Maps.newHashMap();
+
+  private final File file;
+
+  /**
+   * The mapped file, or null if the index is empty. The buffer is replaced
+   * when the index is updated, and only the absolute methods are used, so the
+   * lookups need no lock.
+   */
+  private volatile ByteBuffer buffer;
+
+
+  /**
+   * Constructor.
+   *
+   * @param file
+   *          The index file, that may not exist yet.
+   */
+  public CampModuleIndex(File file) {
+    this.file = file;
+    this.buffer = map(getDataFile(file));
+  }
+
+
+  /**
+   * Return the index of the location given by the system property.
+   *
+   * @return The index, or null if the index is disabled.
+   */
+  public static CampModuleIndex getDefault() {
+    String path = System.getProperty(FILE_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    File file = new File(path).getAbsoluteFile();
+    synchronized (defaultIndexMap) {
+      CampModuleIndex index = defaultIndexMap.get(file);
+      if (index == null) {
+        index = new CampModuleIndex(file);
+        defaultIndexMap.put(file, index);
+      }
+      return index;
+    }
+  }
+
+
+  /**
+   * Return the data file named by the index file.
+   *
+   * @return The data file, or null if the index file is not found or broken.
+   */
+  private static File getDataFile(File file) {
+    if (!file.isFile() || file.length() > MAX_POINTER_SIZE) {
+      return null;
+    }
+    try {
+      String name = new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+      if (!name.startsWith(getDataFilePrefix(file)) || !name.endsWith(DATA_FILE_SUFFIX)
+          || name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0) {
+        return null;
+      }
+      return new File(file.getAbsoluteFile().getParentFile(), name);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+
+  private static String getDataFilePrefix(File file) {
+    // The prefix of the temporary file needs three characters at least.
+    return file.getName() + ".v";
+  }
+
+
+  /**
+   * Map the data file.
+   *
+   * @return The buffer, or null if the file is not found or broken.
+   */
+  private static ByteBuffer map(File dataFile) {
+    if (dataFile == null || !dataFile.isFile()) {
+      return null;
+    }
+    try {
+      ByteBuffer mapped = mapFile(dataFile);
+      return isValid(mapped) ? mapped : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+
+  private static ByteBuffer mapFile(File dataFile) throws IOException {
+    FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("The index is larger than 2GB: " + dataFile);
+      }
+      // The mapping is valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+  }
+
+
+  private static boolean isValid(ByteBuffer mapped) {
+    if (mapped.limit() < HEADER_SIZE
+        || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+      return false;
+    }
+    long directoryEnd = HEADER_SIZE + 4L * mapped.getInt(MODULE_COUNT_OFFSET);
+    return mapped.getInt(MODULE_COUNT_OFFSET) >= 0 && directoryEnd <= mapped.limit();
+  }
+
+
+  /**
+   * Return the number of the indexed modules.
+   *
+   * @return The number of the modules.
+   */
+  public int getModuleCount() {
+    ByteBuffer mapped = this.buffer;
+    return mapped != null ? mapped.getInt(MODULE_COUNT_OFFSET) : 0;
+  }
+
+
+  /**
+   * Check whether the module is indexed or not.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return true if the module is indexed, otherwise false.
+   */
+  public boolean hasModule(String moduleName) {
+    ByteBuffer mapped = this.buffer;
+    return mapped != null && findRecord(mapped, moduleName) >= 0;
+  }
+
+
+  /**
+   * Return the exported names of the module like 'foo.bar.Baz'.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The exported names, or null if the module is not indexed.
+   */
+  public List<String> getExportedList(String moduleName) {
+    return getStringList(moduleName, EXPORTS);
+  }
+
+
+  /**
+   * Return the namespaces used by the 'camp.using' calls of the module.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The namespaces, or null if the module is not indexed.
+   */
+  public List<String> getUsingList(String moduleName) {
+    return getStringList(moduleName, USINGS);
+  }
+
+
+  /**
+   * Return the names of the types declared in the module.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The type names, or null if the module is not indexed.
+   */
+  public List<String> getTypeNameList(String moduleName) {
+    return getStringList(moduleName, TYPE_NAMES);
+  }
+
+
+  /**
+   * Return the aliases of the 'camp.using' namespaces in the module.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The map from the alias name to the qualified name, or null if the
+   *         module is not indexed.
+   */
+  public Map<String, String> getAliasMap(String moduleName) {
+    ByteBuffer mapped = this.buffer;
+    int record = mapped != null ? findRecord(mapped, moduleName) : -1;
+    if (record < 0) {
+      return null;
+    }
+    int offset = getSectionOffset(mapped, record, ALIASES);
+    int count = mapped.getInt(offset);
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int i = 0; i < count; i++) {
+      int entry = offset + 4 + i * 8;
+      builder.put(readString(mapped, mapped.getInt(entry)),
+          readString(mapped, mapped.getInt(entry + 4)));
+    }
+    return builder.build();
+  }
+
+
+  private List<String> getStringList(String moduleName, int section) {
+    ByteBuffer mapped = this.buffer;
+    int record = mapped != null ? findRecord(mapped, moduleName) : -1;
+    if (record < 0) {
+      return null;
+    }
+    int offset = getSectionOffset(mapped, record, section);
+    int count = mapped.getInt(offset);
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    for (int i = 0; i < count; i++) {
+      builder.add(readString(mapped, mapped.getInt(offset + 4 + i * 4)));
+    }
+    return builder.build();
+  }
+
+
+  /**
+   * Search the record of the module by the binary search of the directory.
+   * The names in the file are compared without decoding them.
+   *
+   * @return The offset of the record, or -1 if not found.
+   */
+  private static int findRecord(ByteBuffer mapped, String moduleName) {
+    byte[] key = moduleName.getBytes(Charsets.UTF_8);
+    int low = 0;
+    int high = mapped.getInt(MODULE_COUNT_OFFSET) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int record = mapped.getInt(HEADER_SIZE + middle * 4);
+      int comparison = compareString(mapped, mapped.getInt(record), key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return record;
+      }
+    }
+    return -1;
+  }
+
+
+  private static int compareString(ByteBuffer mapped, int offset, byte[] key) {
+    int length = mapped.getInt(offset);
+    int minLength = Math.min(length, key.length);
+    for (int i = 0; i < minLength; i++) {
+      int comparison = UnsignedBytes.compare(mapped.get(offset + 4 + i), key[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return length - key.length;
+  }
+
+
+  private static int getSectionOffset(ByteBuffer mapped, int record, int section) {
+    int offset = record + 8;
+    for (int i = 0; i < section; i++) {
+      int width = i == ALIASES ? 8 : 4;
+      offset += 4 + mapped.getInt(offset) * width;
+    }
+    return offset;
+  }
+
+
+  private static String readString(ByteBuffer mapped, int offset) {
+    byte[] bytes = new byte[mapped.getInt(offset)];
+    ByteBuffer view = mapped.duplicate();
+    view.position(offset + 4);
+    view.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+
+  /**
+   * Write the modules of the compilation to the new data file, and map it.
+   * The indexed modules of the same names or the same source files are
+   * replaced, and the other records and their strings are copied from the
+   * mapped file as they are. Nothing is written if the records of the
+   * compilation are same as the indexed ones.
+   *
+   * @param sourceNames
+   *          The names of all source files of the compilation.
+   * @param moduleRecords
+   *          The modules collected or restored by the compilation.
+   * @throws IOException
+   *           The index is not written. The index is kept as it is.
+   */
+  public synchronized void update(Collection<String> sourceNames,
+      Collection<ModuleRecord> moduleRecords) throws IOException {
+    Map<String, ModuleRecord> recordMap = Maps.newLinkedHashMap();
+    for (ModuleRecord record : moduleRecords) {
+      recordMap.put(record.name, record);
+    }
+    List<ModuleRecord> records = Lists.newArrayList(recordMap.values());
+    Collections.sort(records, RECORD_ORDER);
+    Set<ByteBuffer> encodedSourceNames = Sets.newHashSet();
+    for (String sourceName : sourceNames) {
+      encodedSourceNames.add(ByteBuffer.wrap(sourceName.getBytes(Charsets.UTF_8)));
+    }
+    ByteBuffer mapped = this.buffer;
+    List<RecordSource> sources = merge(mapped, records, encodedSourceNames);
+    if (sources == null) {
+      return;
+    }
+
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("The directory is not created: " + directory);
+    }
+    File dataFile =
+        File.createTempFile(getDataFilePrefix(file), DATA_FILE_SUFFIX, directory);
+    File pointer = null;
+    try {
+      write(dataFile, mapped, sources);
+      ByteBuffer newBuffer = mapFile(dataFile);
+      pointer = File.createTempFile(file.getName(), ".tmp", directory);
+      Files.write(pointer.toPath(), dataFile.getName().getBytes(Charsets.UTF_8));
+      Files.move(pointer.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      this.buffer = newBuffer;
+    } catch (IOException e) {
+      dataFile.delete();
+      if (pointer != null) {
+        pointer.delete();
+      }
+      throw e;
+    }
+    deleteOldDataFiles(directory, dataFile);
+  }
+
+
+  /**
+   * Delete the data files of the previous updates. The file that is still
+   * mapped may not be deleted on some platforms, and it is deleted by the
+   * following update.
+   */
+  private void deleteOldDataFiles(File directory, File dataFile) {
+    String prefix = getDataFilePrefix(file);
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File oldFile : files) {
+      String name = oldFile.getName();
+      if (name.startsWith(prefix) && name.endsWith(DATA_FILE_SUFFIX)
+          && !name.equals(dataFile.getName())) {
+        oldFile.delete();
+      }
+    }
+  }
+
+
+  /**
+   * Merge the records of the mapped file and the new records in the order of
+   * the names. The mapped records of the same names as the new records, and
+   * the mapped records of the given source files are dropped.
+   *
+   * @return The merged records, or null if no record is changed.
+   */
+  private static List<RecordSource> merge(ByteBuffer mapped, List<ModuleRecord> records,
+      Set<ByteBuffer> sourceNames) {
+    List<RecordSource> sources = Lists.newArrayList();
+    boolean changed = false;
+    int count = mapped != null ? mapped.getInt(MODULE_COUNT_OFFSET) : 0;
+    int i = 0;
+    for (ModuleRecord record : records) {
+      byte[] key = record.getEncodedName();
+      boolean replaced = false;
+      for (; i < count; i++) {
+        int offset = mapped.getInt(HEADER_SIZE + i * 4);
+        int comparison = compareString(mapped, mapped.getInt(offset), key);
+        if (comparison > 0) {
+          break;
+        }
+        if (comparison == 0) {
+          replaced = record.isSame(mapped, offset);
+          i++;
+          break;
+        }
+        if (hasSourceName(mapped, offset, sourceNames)) {
+          changed = true;
+        } else {
+          sources.add(new RecordSource(offset, null));
+        }
+      }
+      changed |= !replaced;
+      sources.add(new RecordSource(-1, record));
+    }
+    for (; i < count; i++) {
+      int offset = mapped.getInt(HEADER_SIZE + i * 4);
+      if (hasSourceName(mapped, offset, sourceNames)) {
+        changed = true;
+      } else {
+        sources.add(new RecordSource(offset, null));
+      }
+    }
+    return changed ? sources : null;
+  }
+
+
+  /**
+   * Check whether the source name of the mapped record is one of the given
+   * names. The name is compared without decoding it.
+   */
+  private static boolean hasSourceName(ByteBuffer mapped, int record,
+      Set<ByteBuffer> sourceNames) {
+    int stringOffset = mapped.getInt(record + 4);
+    ByteBuffer view = mapped.duplicate();
+    view.limit(stringOffset + 4 + mapped.getInt(stringOffset));
+    view.position(stringOffset + 4);
+    return sourceNames.contains(view);
+  }
+
+
+  private static void write(File target, ByteBuffer mapped, List<RecordSource> sources)
+      throws IOException {
+    // The strings follow the records, so their offsets are known after the
+    // sizes of the records are summed. The strings of the copied records are
+    // followed by the strings of the new records.
+    int offset = HEADER_SIZE + sources.size() * 4;
+    int[] recordOffsets = new int[sources.size()];
+    for (int i = 0; i < sources.size(); i++) {
+      RecordSource source = sources.get(i);
+      recordOffsets[i] = offset;
+      offset += source.record != null
+          ? source.record.getSize() : getRecordSize(mapped, source.offset);
+    }
+    Map<Integer, Integer> copiedStringMap = Maps.newLinkedHashMap();
+    for (RecordSource source : sources) {
+      if (source.record == null) {
+        offset = addCopiedStrings(mapped, source.offset, copiedStringMap, offset);
+      }
+    }
+    Map<String, Integer> stringOffsetMap = Maps.newLinkedHashMap();
+    for (RecordSource source : sources) {
+      if (source.record != null) {
+        offset = source.record.addStrings(stringOffsetMap, offset);
+      }
+    }
+
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(target)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sources.size());
+      for (int recordOffset : recordOffsets) {
+        out.writeInt(recordOffset);
+      }
+      for (RecordSource source : sources) {
+        if (source.record != null) {
+          source.record.write(out, stringOffsetMap);
+        } else {
+          copyRecord(mapped, source.offset, out, copiedStringMap);
+        }
+      }
+      for (Integer stringOffset : copiedStringMap.keySet()) {
+        copyString(mapped, stringOffset.intValue(), out);
+      }
+      for (String string : stringOffsetMap.keySet()) {
+        byte[] bytes = string.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+
+  private static int getRecordSize(ByteBuffer mapped, int record) {
+    return getSectionOffset(mapped, record, SECTION_COUNT) - record;
+  }
+
+
+  /**
+   * Give the offsets in the new file to the strings of the mapped record that
+   * are not copied yet.
+   *
+   * @return The offset of the next string.
+   */
+  private static int addCopiedStrings(ByteBuffer mapped, int record,
+      Map<Integer, Integer> copiedStringMap, int offset) {
+    offset = addCopiedString(mapped, mapped.getInt(record), copiedStringMap, offset);
+    offset = addCopiedString(mapped, mapped.getInt(record + 4), copiedStringMap, offset);
+    int position = record + 8;
+    for (int i = 0; i < SECTION_COUNT; i++) {
+      int count = mapped.getInt(position) * (i == ALIASES ? 2 : 1);
+      position += 4;
+      for (int j = 0; j < count; j++, position += 4) {
+        offset = addCopiedString(mapped, mapped.getInt(position), copiedStringMap, offset);
+      }
+    }
+    return offset;
+  }
+
+
+  private static int addCopiedString(ByteBuffer mapped, int stringOffset,
+      Map<Integer, Integer> copiedStringMap, int offset) {
+    Integer key = Integer.valueOf(stringOffset);
+    if (copiedStringMap.containsKey(key)) {
+      return offset;
+    }
+    copiedStringMap.put(key, Integer.valueOf(offset));
+    return offset + 4 + mapped.getInt(stringOffset);
+  }
+
+
+  /**
+   * Copy the mapped record with the offsets of the strings in the new file.
+   */
+  private static void copyRecord(ByteBuffer mapped, int record, DataOutputStream out,
+      Map<Integer, Integer> copiedStringMap) throws IOException {
+    out.writeInt(copiedStringMap.get(Integer.valueOf(mapped.getInt(record))).intValue());
+    out.writeInt(copiedStringMap.get(Integer.valueOf(mapped.getInt(record + 4))).intValue());
+    int position = record + 8;
+    for (int i = 0; i < SECTION_COUNT; i++) {
+      int entryCount = mapped.getInt(position);
+      out.writeInt(entryCount);
+      position += 4;
+      int count = entryCount * (i == ALIASES ? 2 : 1);
+      for (int j = 0; j < count; j++, position += 4) {
+        out.writeInt(
+            copiedStringMap.get(Integer.valueOf(mapped.getInt(position))).intValue());
+      }
+    }
+  }
+
+
+  /**
+   * Copy the length and the bytes of the mapped string without decoding it.
+   */
+  private static void copyString(ByteBuffer mapped, int stringOffset, DataOutputStream out)
+      throws IOException {
+    byte[] bytes = new byte[4 + mapped.getInt(stringOffset)];
+    ByteBuffer view = mapped.duplicate();
+    view.position(stringOffset);
+    view.get(bytes);
+    out.write(bytes);
+  }
+
+
+  /**
+   * The record of the new data file, that is copied from the mapped file or
+   * encoded from the module of the compilation.
+   */
+  private static final class RecordSource {
+    /**
+     * The offset of the mapped record, or -1 if the record is new.
+     */
+    private final int offset;
+
+    /**
+     * The new record, or null if the record is copied.
+     */
+    private final ModuleRecord record;
+
+
+    public RecordSource(int offset, ModuleRecord record) {
+      this.offset = offset;
+      this.record = record;
+    }
+  }
+
+
+  /**
+   * The module record that is encoded from the ModuleInfo. The record is also
+   * kept by the CampModuleCache, so the scripts restored from the cache are
+   * indexed without collecting them again.
+   */
+  static final class ModuleRecord implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final String name;
+
+    private final String sourceName;
+
+    /**
+     * The strings of each section. The aliases are the pairs of the alias
+     * name and the qualified name.
+     */
+    private final ArrayList<ArrayList<String>> sections;
+
+    private transient byte[] encodedName;
+
+
+    private ModuleRecord(String name, String sourceName,
+        ArrayList<ArrayList<String>> sections) {
+      this.name = Preconditions.checkNotNull(name);
+      this.sourceName = Preconditions.checkNotNull(sourceName);
+      this.sections = sections;
+    }
+
+
+    public static ModuleRecord from(String sourceName, ModuleInfo moduleInfo) {
+      ArrayList<String> exports = moduleInfo.getExportedList() != null
+          ? Lists.newArrayList(moduleInfo.getExportedList()) : Lists.<String> newArrayList();
+
+      ArrayList<String> usings = Lists.newArrayList();
+      for (Node usingCall : moduleInfo.getUsingCallList()) {
+        Node namespace = usingCall.getFirstChild().getNext();
+        if (namespace != null && namespace.isString()) {
+          usings.add(namespace.getString());
+        }
+      }
+
+      ArrayList<String> aliases = Lists.newArrayList();
+      for (Map.Entry<String, String> entry : moduleInfo.getAliasMap().entrySet()) {
+        aliases.add(entry.getKey());
+        aliases.add(entry.getValue());
+      }
+
+      ArrayList<String> typeNames = Lists.newArrayList(moduleInfo.getTypeNames());
+
+      ArrayList<ArrayList<String>> sections = Lists.newArrayList();
+      sections.add(exports);
+      sections.add(usings);
+      sections.add(aliases);
+      sections.add(typeNames);
+      return new ModuleRecord(moduleInfo.getModuleName(), sourceName, sections);
+    }
+
+
+    public String getSourceName() {
+      return this.sourceName;
+    }
+
+
+    public List<String> getUsingList() {
+      return this.sections.get(USINGS);
+    }
+
+
+    public byte[] getEncodedName() {
+      if (encodedName == null) {
+        encodedName = name.getBytes(Charsets.UTF_8);
+      }
+      return encodedName;
+    }
+
+
+    public int getSize() {
+      int size = 8;
+      for (List<String> strings : sections) {
+        size += 4 + strings.size() * 4;
+      }
+      return size;
+    }
+
+
+    /**
+     * Give the offsets to the strings of the record that are not written yet.
+     *
+     * @return The offset of the next string.
+     */
+    public int addStrings(Map<String, Integer> stringOffsetMap, int offset) {
+      offset = addString(stringOffsetMap, name, offset);
+      offset = addString(stringOffsetMap, sourceName, offset);
+      for (List<String> strings : sections) {
+        for (String string : strings) {
+          offset = addString(stringOffsetMap, string, offset);
+        }
+      }
+      return offset;
+    }
+
+
+    private static int addString(Map<String, Integer> stringOffsetMap, String string,
+        int offset) {
+      if (stringOffsetMap.containsKey(string)) {
+        return offset;
+      }
+      stringOffsetMap.put(string, Integer.valueOf(offset));
+      return offset + 4 + string.getBytes(Charsets.UTF_8).length;
+    }
+
+
+    /**
+     * Check whether the mapped record of the same name has the same strings.
+     */
+    public boolean isSame(ByteBuffer mapped, int record) {
+      if (compareString(mapped, mapped.getInt(record + 4),
+          sourceName.getBytes(Charsets.UTF_8)) != 0) {
+        return false;
+      }
+      int position = record + 8;
+      for (int i = 0; i < SECTION_COUNT; i++) {
+        List<String> strings = sections.get(i);
+        int count = mapped.getInt(position) * (i == ALIASES ? 2 : 1);
+        position += 4;
+        if (count != strings.size()) {
+          return false;
+        }
+        for (String string : strings) {
+          if (compareString(mapped, mapped.getInt(position), string.getBytes(Charsets.UTF_8))
+              != 0) {
+            return false;
+          }
+          position += 4;
+        }
+      }
+      return true;
+    }
+
+
+    public void write(DataOutputStream out, Map<String, Integer> stringOffsetMap)
+        throws IOException {
+      out.writeInt(stringOffsetMap.get(name).intValue());
+      out.writeInt(stringOffsetMap.get(sourceName).intValue());
+      for (int i = 0; i < SECTION_COUNT; i++) {
+        List<String> strings = sections.get(i);
+        out.writeInt(i == ALIASES ? strings.size() / 2 : strings.size());
+        for (String string : strings) {
+          out.writeInt(stringOffsetMap.get(string).intValue());
+        }
+      }
+    }
+  }
+}
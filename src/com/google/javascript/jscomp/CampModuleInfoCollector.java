@@ -1,18 +1,21 @@
 package com.google.javascript.jscomp;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.javascript.jscomp.CampModuleTransformInfo.JSDocLendsInfoMutator;
 import com.google.javascript.jscomp.CampModuleTransformInfo.JSDocTypeInfoMutator;
 import com.google.javascript.jscomp.CampModuleTransformInfo.LocalAliasInfo;
 import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
 import com.google.javascript.jscomp.CampModuleTransformInfo.TypeInfo;
-import com.google.javascript.jscomp.NodeTraversal.AbstractPostOrderCallback;
+import com.google.javascript.jscomp.NodeTraversal.Callback;
 import com.google.javascript.jscomp.Scope.Var;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.Node;
@@ -85,24 +88,264 @@ final class CampModuleInfoCollector {
       "JSC_MSG_MAIN_ONLY_ALLOWED_IN_ASSIGNMENT.",
       "The function main only allowed to be left hand side of assignment.");
 
-  private static final ImmutableSet<String> MARKER_SET = ImmutableSet.of(
-      CampModuleConsts.USING_CALL,
-      CampModuleConsts.CAMP_MODULE_CALL);
+  private static final CampQualifiedNameMatcher[] MARKERS = {
+      CampModuleConsts.USING_CALL_MATCHER,
+      CampModuleConsts.CAMP_MODULE_CALL_MATCHER
+  };
 
   private final CampModuleTransformInfo campModuleTransformInfo;
 
   private final AbstractCompiler compiler;
 
+  private final int parallelism;
 
-  public CampModuleInfoCollector(AbstractCompiler compiler,
+  private final CampMarkerFilter markerFilter;
+
+  /**
+   * The diagnostics of the script collected in parallel, or null if the
+   * diagnostics are reported to the compiler directly.
+   */
+  private final List<JSError> errors;
+
+  /**
+   * Whether the variables of the current module are the aliases of the
+   * 'camp.using' calls or not, keyed by the name node of the variable.
+   */
+  private final Map<Node, Boolean> aliasVarMap = Maps.newIdentityHashMap();
+
+  /**
+   * The kinds of the JSDoc type names of the current module, per scope. The
+   * kinds are forgotten when a variable of the module is declared again.
+   */
+  private final Map<Scope, Map<String, TypeKind>> typeKindMap = Maps.newIdentityHashMap();
+
+
+  /**
+   * The kind of a JSDoc type name in the module.
+   */
+  private enum TypeKind {
+    /**
+     * The type of the 'camp.using' alias.
+     */
+    ALIAS,
+
+    /**
+     * The type exported by the namespace reference argument.
+     */
+    EXPORTED,
+
+    /**
+     * The module local type.
+     */
+    LOCAL,
+
+    /**
+     * Other types.
+     */
+    NONE
+  }
+
+
+  public CampModuleInfoCollector(CampContext context,
       CampModuleTransformInfo campModuleTransformInfo) {
+    this.compiler = context.getCompiler();
+    this.campModuleTransformInfo = campModuleTransformInfo;
+    this.parallelism = context.getParallelism();
+    this.markerFilter = context.getMarkerFilter();
+    this.errors = null;
+  }
+
+
+  private CampModuleInfoCollector(AbstractCompiler compiler,
+      CampModuleTransformInfo campModuleTransformInfo, List<JSError> errors) {
     this.compiler = compiler;
     this.campModuleTransformInfo = campModuleTransformInfo;
+    this.parallelism = 1;
+    this.markerFilter = null;
+    this.errors = errors;
   }
 
 
+  /**
+   * Collect the module informations. Each script is traversed only once, and
+   * the contents of 'camp.module' are collected in the same traversal that
+   * finds the module call. The scripts that can not contain the camp markers
+   * are skipped, and the others are collected in parallel if the parallelism
+   * of the CampContext is greater than 1.
+   *
+   * @param root
+   *          The root of the scripts, or a SCRIPT node.
+   */
   public void process(Node root) {
-    NodeTraversal.traverse(compiler, root, new ModuleCallFinder());
+    if (root.isScript()) {
+      if (this.mayContainMarkers(root)) {
+        this.traverse(root);
+      }
+    } else if (this.parallelism > 1 && root.hasMoreThanOneChild()) {
+      this.processInParallel(root);
+    } else {
+      for (Node script = root.getFirstChild(); script != null; script = script.getNext()) {
+        if (this.mayContainMarkers(script)) {
+          this.traverse(script);
+        }
+      }
+    }
+  }
+
+
+  private boolean mayContainMarkers(Node script) {
+    if (this.markerFilter.mayContainMarkers(script)) {
+      return true;
+    }
+    this.markerFilter.addModuleSkip();
+    return false;
+  }
+
+
+  private void traverse(Node script) {
+    SyntacticScopeCreator scopeCreator = this.errors == null
+        ? new SyntacticScopeCreator(compiler)
+        : new SyntacticScopeCreator(compiler, new RedeclarationCollector());
+    new NodeTraversal(compiler, new ModuleCallFinder(), new ModuleScopeCreator(scopeCreator))
+        .traverse(script);
+  }
+
+
+  /**
+   * Collect each script on the fork/join pool. Each script is collected to
+   * its own CampModuleTransformInfo, and the results are merged in the order
+   * of the scripts. So the module ids and the order of the diagnostics are
+   * same as the sequential collection.
+   *
+   * @param root
+   *          The root of the scripts.
+   */
+  private void processInParallel(Node root) {
+    List<ScriptCollectionTask> tasks = Lists.newArrayList();
+    ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+    try {
+      for (Node script = root.getFirstChild(); script != null; script = script.getNext()) {
+        if (!this.mayContainMarkers(script)) {
+          continue;
+        }
+        ScriptCollectionTask task = new ScriptCollectionTask(compiler, script,
+            campModuleTransformInfo.getNameTable());
+        tasks.add(task);
+        pool.execute(task);
+      }
+      for (ScriptCollectionTask task : tasks) {
+        task.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    for (ScriptCollectionTask task : tasks) {
+      for (JSError error : task.errors) {
+        compiler.report(error);
+      }
+      String sourceName = task.script.getSourceFileName();
+      ModuleInfo moduleInfo = task.campModuleTransformInfo.getModuleInfo(sourceName);
+      if (moduleInfo != null) {
+        campModuleTransformInfo.adoptModuleInfo(sourceName, moduleInfo);
+      }
+    }
+  }
+
+
+  /**
+   * Report the diagnostic to the compiler, or keep it until the parallel
+   * collection is finished.
+   */
+  private void report(NodeTraversal t, Node n, DiagnosticType diagnosticType,
+      String... arguments) {
+    if (this.errors == null) {
+      t.report(n, diagnosticType, arguments);
+    } else {
+      this.errors.add(t.makeError(n, diagnosticType, arguments));
+    }
+  }
+
+
+  /**
+   * The collection of a script that runs on the fork/join pool.
+   * 
+   * @author aono_taketoshi
+   * 
+   */
+  private static final class ScriptCollectionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final AbstractCompiler compiler;
+
+    private final Node script;
+
+    private final CampModuleTransformInfo campModuleTransformInfo;
+
+    private final List<JSError> errors = Lists.newArrayList();
+
+
+    public ScriptCollectionTask(AbstractCompiler compiler, Node script, CampNameTable nameTable) {
+      this.compiler = compiler;
+      this.script = script;
+      this.campModuleTransformInfo = new CampModuleTransformInfo(nameTable);
+    }
+
+
+    @Override
+    protected void compute() {
+      new CampModuleInfoCollector(compiler, campModuleTransformInfo, errors).traverse(script);
+    }
+  }
+
+
+  /**
+   * The scope creator that gives the empty global scope to the script. The
+   * scopes of the module were rooted at the 'camp.module' call before the
+   * module was collected in the same traversal as the script, so the names in
+   * the module are not resolved to the top level variables of the script, and
+   * the redeclarations of them are not reported by this pass.
+   * 
+   * @author aono_taketoshi
+   * 
+   */
+  private static final class ModuleScopeCreator implements ScopeCreator {
+    private final ScopeCreator scopeCreator;
+
+
+    public ModuleScopeCreator(ScopeCreator scopeCreator) {
+      this.scopeCreator = scopeCreator;
+    }
+
+
+    @Override
+    public Scope createScope(Node n, Scope parent) {
+      if (parent == null) {
+        return Scope.createGlobalScope(n);
+      }
+      return scopeCreator.createScope(n, parent);
+    }
+  }
+
+
+  /**
+   * The redeclaration handler that reports the same diagnostics as the
+   * default handler of the SyntacticScopeCreator, but keeps them until the
+   * parallel collection is finished. The global scope is not scanned by the
+   * ModuleScopeCreator, so only the local scopes are handled.
+   * 
+   * @author aono_taketoshi
+   * 
+   */
+  private final class RedeclarationCollector implements
+      SyntacticScopeCreator.RedeclarationHandler {
+    @Override
+    public void onRedeclaration(Scope s, String name, Node n, CompilerInput input) {
+      if (name.equals("arguments") && !NodeUtil.isVarDeclaration(n)) {
+        errors.add(JSError.make(NodeUtil.getSourceName(n), n,
+            SyntacticScopeCreator.VAR_ARGUMENTS_SHADOWED_ERROR));
+      }
+    }
   }
 
 
@@ -124,10 +367,11 @@ final class CampModuleInfoCollector {
       if (parent.isAssign() && parent.getFirstChild().equals(n)) {
         return false;
       }
-      String qualifiedName = n.getQualifiedName();
-      if (MARKER_SET.contains(qualifiedName)) {
-        t.report(n, MESSAGE_INVALID_ACCESS_TO_ENTITY, qualifiedName);
-        return true;
+      for (int i = 0; i < MARKERS.length; i++) {
+        if (MARKERS[i].matches(n)) {
+          report(t, n, MESSAGE_INVALID_ACCESS_TO_ENTITY, MARKERS[i].getQualifiedName());
+          return true;
+        }
       }
     }
     return false;
@@ -142,45 +386,51 @@ final class CampModuleInfoCollector {
    * <code>"var Alias = camp.using('foo.bar.baz.Alias');"</code>
    * </pre>
    * 
-   * @param moduleInfo
-   *          Current module information.
-   * @param t
-   *          Current NodeTraversal
-   * @param varName
-   *          A target variable name.
-   * @return true if varName is alias of an external module, false otherwise.
+   * The variable is classified once, and the result is looked up afterward.
+   * 
+   * @param var
+   *          A target variable resolved from the current scope, or null if
+   *          the name is not declared.
+   * @return true if var is alias of an external module, false otherwise.
    */
-  private boolean isAliasVar(ModuleInfo moduleInfo, NodeTraversal t, String varName) {
-    Scope scope = t.getScope();
-    Var var = scope.getVar(varName);
-    if (var != null) {
-      Node nameNode = var.getNameNode();
-      Node child = nameNode.getFirstChild();
-      if (child != null) {
-        boolean inCall = false;
-        while (true) {
-          if (child != null) {
-            if (child.isCall()) {
-              inCall = true;
-            }
-            if (child.isGetProp() && inCall) {
-              String qualifiedName = child.getQualifiedName();
+  private boolean isAliasVar(Var var) {
+    if (var == null) {
+      return false;
+    }
+    Node nameNode = var.getNameNode();
+    Boolean isAlias = aliasVarMap.get(nameNode);
+    if (isAlias == null) {
+      isAlias = Boolean.valueOf(hasUsingCall(nameNode));
+      aliasVarMap.put(nameNode, isAlias);
+    }
+    return isAlias.booleanValue();
+  }
 
-              if (Strings.isNullOrEmpty(qualifiedName)) {
-                return false;
-              }
 
-              if (qualifiedName.equals(CampModuleConsts.USING_CALL)) {
-                return true;
-              }
-            }
-          } else {
-            break;
-          }
-          child = child.getFirstChild();
+  /**
+   * Find the 'camp.using' call from the initial value of the variable.
+   * 
+   * @param nameNode
+   *          The name node of the variable.
+   * @return true if the initial value is the result of the 'camp.using' call.
+   */
+  private boolean hasUsingCall(Node nameNode) {
+    Node child = nameNode.getFirstChild();
+    boolean inCall = false;
+    while (child != null) {
+      if (child.isCall()) {
+        inCall = true;
+      }
+      if (child.isGetProp() && inCall) {
+        if (!child.isQualifiedName()) {
+          return false;
         }
 
+        if (CampModuleConsts.USING_CALL_MATCHER.matches(child)) {
+          return true;
+        }
       }
+      child = child.getFirstChild();
     }
     return false;
   }
@@ -251,12 +501,8 @@ final class CampModuleInfoCollector {
     public MarkerProcessor getProperMarkerProcessor(NodeTraversal t, Node n, Node parent) {
       if (n.isCall()) {
         Node firstChild = n.getFirstChild();
-        if (firstChild.isGetProp()) {
-          String qualifiedName = firstChild.getQualifiedName();
-          if (!Strings.isNullOrEmpty(qualifiedName)
-              && qualifiedName.equals(CampModuleConsts.USING_CALL)) {
-            return this.usingMarkerProcessor;
-          }
+        if (CampModuleConsts.USING_CALL_MATCHER.matches(firstChild)) {
+          return this.usingMarkerProcessor;
         }
       } else if (n.isName() &&
           !n.getParent().isParamList()) {
@@ -316,14 +562,14 @@ final class CampModuleInfoCollector {
     @Override
     public void processMarker(NodeTraversal t, Node n, Node parent) {
       if (t.getScopeDepth() != 2) {
-        t.report(n, MESSAGE_USING_SCOPE_IS_INVALID);
+        report(t, n, MESSAGE_USING_SCOPE_IS_INVALID);
         return;
       }
       Node stringNode = n.getFirstChild().getNext();
       if (stringNode == null ||
           !stringNode.isString() ||
           Strings.isNullOrEmpty(stringNode.getString())) {
-        t.report(n, MESSAGE_USING_FIRST_ARGUMENT_NOT_VALID);
+        report(t, n, MESSAGE_USING_FIRST_ARGUMENT_NOT_VALID);
         return;
       }
 
@@ -332,7 +578,7 @@ final class CampModuleInfoCollector {
         tmp = tmp.getParent();
         if (tmp != null && !tmp.isName() && !tmp.isExprResult() && !NodeUtil.isGet(tmp)
             && !tmp.isVar()) {
-          t.report(n, MESSAGE_INVALID_PARENT_OF_USING);
+          report(t, n, MESSAGE_INVALID_PARENT_OF_USING);
           return;
         }
       }
@@ -343,12 +589,12 @@ final class CampModuleInfoCollector {
           if (nameNode != null) {
             String name = nameNode.getString();
             if (!Strings.isNullOrEmpty(name) && varNameSet.contains(name)) {
-              t.report(nameNode, MESSAGE_DUPLICATE_USING, name);
+              report(t, nameNode, MESSAGE_DUPLICATE_USING, name);
             }
           }
         }
       } else {
-        t.report(n, MESSAGE_INVALID_PARENT_OF_USING);
+        report(t, n, MESSAGE_INVALID_PARENT_OF_USING);
       }
       moduleInfo.addUsingCall(n);
     }
@@ -381,14 +627,14 @@ final class CampModuleInfoCollector {
             if (rvalue.isName() || rvalue.isFunction() || NodeUtil.isGet(rvalue)) {
               moduleInfo.setMain(rvalue);
             } else {
-              t.report(rvalue, MESSAGE_MAIN_NOT_FUNCTION);
+              report(t, rvalue, MESSAGE_MAIN_NOT_FUNCTION);
             }
           } else {
-            t.report(rvalue, MESSAGE_MAIN_ALREADY_FOUNDED,
+            report(t, rvalue, MESSAGE_MAIN_ALREADY_FOUNDED,
                 String.valueOf(moduleInfo.getMain().getSourcePosition()));
           }
         } else {
-          t.report(parent, MESSAGE_MAIN_ONLY_ALLOWED_IN_ASSIGNMENT);
+          report(t, parent, MESSAGE_MAIN_ONLY_ALLOWED_IN_ASSIGNMENT);
         }
       } else if (!this.moduleInfo.hasExports(n)) {
         this.moduleInfo.addExports(n);
@@ -524,16 +770,19 @@ final class CampModuleInfoCollector {
     @Override
     public void processMarker(NodeTraversal t, Node n, Node parent) {
       String varName = n.getString();
-      boolean isAlias = isAliasVar(moduleInfo, t, varName);
+      // The name is resolved once, and the resolution is updated only when
+      // the variable is declared again.
+      Scope scope = t.getScope();
+      Var var = scope.getVar(varName);
+      boolean isAlias = isAliasVar(var);
 
       if (t.getScopeDepth() == 2 &&
           (parent.isFunction() ||
           (parent.isVar() && !isAliasDecl(n.getFirstChild())))) {
-        Scope scope = t.getScope();
-        Var var = scope.getVar(varName);
         if (var != null && !var.getNameNode().equals(n) && isAliasDecl(var.getInitialValue())) {
           scope.undeclare(var);
-          scope.declare(varName, n, null, compiler.getInput(n.getInputId()));
+          var = scope.declare(varName, n, null, compiler.getInput(n.getInputId()));
+          typeKindMap.clear();
           isAlias = false;
         }
       }
@@ -541,18 +790,16 @@ final class CampModuleInfoCollector {
       if (!parent.isVar() && !parent.isFunction() && isAlias) {
         moduleInfo.addAliasVar(n);
       } else if (!isAlias) {
-        Scope scope = t.getScope();
         if (scope.getDepth() == 1) {
           if (parent.isVar() || parent.isFunction()) {
             String name = n.getString();
-            if (moduleInfo.getRenamedVar(name) == null) {
-              moduleInfo.putRenamedVar(name, moduleInfo.getModuleId() + "_" + varName);
+            if (!moduleInfo.hasRenamedVar(name)) {
+              moduleInfo.addRenamedVar(name);
               moduleInfo.addRenameVarBaseDeclaration(n);
             }
           }
         }
 
-        Var var = scope.getVar(varName);
         if (var != null) {
           moduleInfo.addRenameTarget(var.getNameNode(), n);
         }
@@ -576,11 +823,8 @@ final class CampModuleInfoCollector {
       while (true) {
         if (tmp.isCall()) {
           Node getprop = tmp.getFirstChild();
-          if (getprop.isGetProp()) {
-            String qualifiedName = getprop.getQualifiedName();
-            if (qualifiedName != null && qualifiedName.equals(CampModuleConsts.USING_CALL)) {
-              return true;
-            }
+          if (CampModuleConsts.USING_CALL_MATCHER.matches(getprop)) {
+            return true;
           }
         }
         tmp = tmp.getFirstChild();
@@ -594,31 +838,59 @@ final class CampModuleInfoCollector {
 
 
   /**
-   * Find 'camp.module' call and process call.
+   * Find 'camp.module' call and process call. The function of the found
+   * module is visited by the ModuleVisitor in the same traversal, so the
+   * scopes of the module are created only once.
    * 
    * @author aono_taketoshi
    * 
    */
-  private final class ModuleCallFinder extends AbstractPostOrderCallback {
+  private final class ModuleCallFinder implements Callback {
+    private Node moduleFunction;
+
+    private ModuleVisitor moduleVisitor;
+
+    private boolean inModule = false;
+
+
+    @Override
+    public boolean shouldTraverse(NodeTraversal t, Node n, Node parent) {
+      if (n == this.moduleFunction) {
+        this.inModule = true;
+      }
+      return true;
+    }
+
 
     @Override
     public void visit(NodeTraversal t, Node n, Node parent) {
-      if (!isAccessToMethod(t, n, parent)) {
+      boolean isAccessToMethod;
+      if (this.inModule) {
+        isAccessToMethod = this.moduleVisitor.visit(t, n, parent);
+        if (n == this.moduleFunction) {
+          this.inModule = false;
+          this.moduleFunction = null;
+          this.moduleVisitor = null;
+          aliasVarMap.clear();
+          typeKindMap.clear();
+        }
+      } else {
+        isAccessToMethod = isAccessToMethod(t, n, parent);
+      }
+
+      if (!isAccessToMethod) {
         if (parent != null && parent.isCall() && n.isGetProp()) {
-          String qualifiedName = n.getQualifiedName();
-          if (!Strings.isNullOrEmpty(qualifiedName)) {
-            if (qualifiedName.equals(CampModuleConsts.CAMP_MODULE_CALL)) {
-              if (this.isValidModuleUsage(t, parent)) {
-                String sourceName = t.getSourceName();
-                if (!campModuleTransformInfo.hasModuleInfo(sourceName)) {
-                  this.processModule(sourceName, t, n, parent);
-                } else {
-                  t.report(parent, MESSAGE_MODULE_ONLY_ALLOWED_ONCE_PER_FILE);
-                }
+          if (CampModuleConsts.CAMP_MODULE_CALL_MATCHER.matches(n)) {
+            if (this.isValidModuleUsage(t, parent)) {
+              String sourceName = t.getSourceName();
+              if (!campModuleTransformInfo.hasModuleInfo(sourceName)) {
+                this.processModule(sourceName, t, n, parent);
+              } else {
+                report(t, parent, MESSAGE_MODULE_ONLY_ALLOWED_ONCE_PER_FILE);
               }
-            } else if (qualifiedName.equals(CampModuleConsts.USING_CALL)) {
-              this.checkUsingCall(t, n);
             }
+          } else if (CampModuleConsts.USING_CALL_MATCHER.matches(n)) {
+            this.checkUsingCall(t, n);
           }
         }
       }
@@ -643,15 +915,14 @@ final class CampModuleInfoCollector {
           Node parent = tmp.getParent();
           if (parent.isCall()) {
             Node child = parent.getFirstChild();
-            if (child.isGetProp()
-                && child.getQualifiedName().equals(CampModuleConsts.CAMP_MODULE_CALL)) {
+            if (CampModuleConsts.CAMP_MODULE_CALL_MATCHER.matches(child)) {
               return;
             }
           }
         }
         tmp = tmp.getParent();
       }
-      t.report(n, MESSAGE_INVALID_USE_OF_USING);
+      report(t, n, MESSAGE_INVALID_USE_OF_USING);
     }
 
 
@@ -680,12 +951,13 @@ final class CampModuleInfoCollector {
               paramList.getFirstChild());
           moduleInfo.setExportedList(exportedList);
           campModuleTransformInfo.putModuleInfo(sourceName, moduleInfo);
-          NodeTraversal.traverseRoots(compiler,
-              Lists.newArrayList(functionNode),
-              new ModuleVisitor(moduleInfo));
+          // The callee is visited before the function, so the nodes in the
+          // function are visited by the ModuleVisitor in this traversal.
+          this.moduleFunction = functionNode;
+          this.moduleVisitor = new ModuleVisitor(moduleInfo);
         }
       } else {
-        t.report(parent, MESSAGE_MODULE_FIRST_ARGUMENT_NOT_VALID);
+        report(t, parent, MESSAGE_MODULE_FIRST_ARGUMENT_NOT_VALID);
       }
     }
 
@@ -727,7 +999,7 @@ final class CampModuleInfoCollector {
      * @return The module id.
      */
     private String createModuleIdFrom(String moduleName) {
-      return moduleName.replaceAll("\\.", "_");
+      return campModuleTransformInfo.getNameTable().getModuleId(moduleName);
     }
 
 
@@ -766,13 +1038,13 @@ final class CampModuleInfoCollector {
           if (paramList.getChildCount() == 1) {
             return true;
           } else {
-            t.report(secondArg, MESSAGE_MODULE_SECOND_ARGUMENT_NOT_VALID);
+            report(t, secondArg, MESSAGE_MODULE_SECOND_ARGUMENT_NOT_VALID);
           }
         } else {
-          t.report(secondArg, MESSAGE_MODULE_SECOND_ARGUMENT_NOT_VALID);
+          report(t, secondArg, MESSAGE_MODULE_SECOND_ARGUMENT_NOT_VALID);
         }
       } else {
-        t.report(firstArg, MESSAGE_MODULE_FIRST_ARGUMENT_NOT_VALID);
+        report(t, firstArg, MESSAGE_MODULE_FIRST_ARGUMENT_NOT_VALID);
       }
       return false;
     }
@@ -789,7 +1061,7 @@ final class CampModuleInfoCollector {
      */
     private boolean checkModuleIsCalledInGlobalScope(NodeTraversal t, Node n) {
       if (!n.getParent().isExprResult()) {
-        t.report(n, MESSAGE_MODULE_NOT_ALLOWED_IN_CLOSURE);
+        report(t, n, MESSAGE_MODULE_NOT_ALLOWED_IN_CLOSURE);
         return false;
       }
 
@@ -797,7 +1069,7 @@ final class CampModuleInfoCollector {
 
       while (parent != null) {
         if (!NodeUtil.isStatementBlock(parent)) {
-          t.report(n, MESSAGE_MODULE_NOT_ALLOWED_IN_CLOSURE);
+          report(t, n, MESSAGE_MODULE_NOT_ALLOWED_IN_CLOSURE);
           return false;
         }
         parent = parent.getParent();
@@ -851,13 +1123,18 @@ final class CampModuleInfoCollector {
     private void checkJSDocType(JSDocInfo jsDocInfo, NodeTraversal t, Node n) {
       String lendsName = jsDocInfo.getLendsName();
       if (!Strings.isNullOrEmpty(lendsName)) {
-        Scope scope = t.getScope();
-        if (isExportedType(lendsName, scope)) {
-          moduleInfo.addExportedType(new JSDocLendsInfoMutator(n, lendsName));
-        } else if (isAliasType(t, scope, lendsName)) {
-          moduleInfo.addAliasType(new JSDocLendsInfoMutator(n, lendsName));
-        } else if (isLocalType(scope, lendsName)) {
-          moduleInfo.addLocalType(new JSDocLendsInfoMutator(n, lendsName));
+        switch (getTypeKind(t.getScope(), lendsName)) {
+          case EXPORTED:
+            moduleInfo.addExportedType(new JSDocLendsInfoMutator(n, lendsName));
+            break;
+          case ALIAS:
+            moduleInfo.addAliasType(new JSDocLendsInfoMutator(n, lendsName));
+            break;
+          case LOCAL:
+            moduleInfo.addLocalType(new JSDocLendsInfoMutator(n, lendsName));
+            break;
+          default:
+            break;
         }
       } else {
         for (Node typeNode : jsDocInfo.getTypeNodes()) {
@@ -892,14 +1169,19 @@ final class CampModuleInfoCollector {
 
       if (typeNode.isString() && !isRecordKey) {
         String type = typeNode.getString();
-        Scope scope = t.getScope();
 
-        if (isAliasType(t, scope, type)) {
-          moduleInfo.addAliasType(new JSDocTypeInfoMutator(typeNode, type));
-        } else if (isExportedType(type, scope)) {
-          moduleInfo.addExportedType(new JSDocTypeInfoMutator(typeNode, type));
-        } else if (isLocalType(scope, type)) {
-          moduleInfo.addLocalType(new JSDocTypeInfoMutator(typeNode, type));
+        switch (getTypeKind(t.getScope(), type)) {
+          case ALIAS:
+            moduleInfo.addAliasType(new JSDocTypeInfoMutator(typeNode, type));
+            break;
+          case EXPORTED:
+            moduleInfo.addExportedType(new JSDocTypeInfoMutator(typeNode, type));
+            break;
+          case LOCAL:
+            moduleInfo.addLocalType(new JSDocTypeInfoMutator(typeNode, type));
+            break;
+          default:
+            break;
         }
       }
 
@@ -909,12 +1191,46 @@ final class CampModuleInfoCollector {
     }
 
 
+    /**
+     * Return the kind of a type expression. The kind is decided once per scope
+     * and type expression. The alias and the exported type are exclusive,
+     * because the namespace reference argument has no initial value, and
+     * they take precedence over the local type.
+     * 
+     * @param scope
+     *          Current scope.
+     * @param typeName
+     *          Target type expression.
+     * @return The kind of the type expression.
+     */
+    private TypeKind getTypeKind(Scope scope, String typeName) {
+      Map<String, TypeKind> kinds = typeKindMap.get(scope);
+      if (kinds == null) {
+        kinds = Maps.newHashMap();
+        typeKindMap.put(scope, kinds);
+      }
+
+      TypeKind kind = kinds.get(typeName);
+      if (kind == null) {
+        if (isAliasType(scope, typeName)) {
+          kind = TypeKind.ALIAS;
+        } else if (isExportedType(typeName, scope)) {
+          kind = TypeKind.EXPORTED;
+        } else if (isLocalType(scope, typeName)) {
+          kind = TypeKind.LOCAL;
+        } else {
+          kind = TypeKind.NONE;
+        }
+        kinds.put(typeName, kind);
+      }
+      return kind;
+    }
+
+
     /**
      * Check whether a type expression is alias of the 'camp.using' result or
      * not.
      * 
-     * @param t
-     *          Current NodeTraversal.
      * @param scope
      *          Current scope.
      * @param typeName
@@ -922,14 +1238,9 @@ final class CampModuleInfoCollector {
      * @return true if a type expression is alias of 'camp.using' call result,
      *         otherwise false.
      */
-    private boolean isAliasType(NodeTraversal t, Scope scope, String typeName) {
+    private boolean isAliasType(Scope scope, String typeName) {
       String type = getTopLevelName(typeName);
-
-      Var var = scope.getVar(type);
-      if (var != null && isAliasVar(moduleInfo, t, var.getName())) {
-        return true;
-      }
-      return false;
+      return isAliasVar(scope.getVar(type));
     }
 
 
@@ -970,8 +1281,8 @@ final class CampModuleInfoCollector {
      * @return A root property name of the type property.
      */
     private String getTopLevelName(String type) {
-      String[] types = type.split("\\.");
-      return types[0];
+      int index = type.indexOf('.');
+      return index < 0 ? type : type.substring(0, index);
     }
 
 
@@ -986,10 +1297,9 @@ final class CampModuleInfoCollector {
      *         otherwise false.
      */
     private boolean isExportedType(String type, Scope scope) {
-      String[] splited = type.split("\\.");
-      if (splited.length > 1) {
-        String topLevel = splited[0];
-        Var var = scope.getVar(topLevel);
+      int index = type.indexOf('.');
+      if (index > 0 && index < type.length() - 1) {
+        Var var = scope.getVar(type.substring(0, index));
         if (var != null) {
           if (moduleInfo.getNamespaceReferenceArgument().equals(var.getNameNode())) {
             return true;
@@ -1007,7 +1317,7 @@ final class CampModuleInfoCollector {
    * @author aono_taketoshi
    * 
    */
-  private final class ModuleVisitor extends AbstractPostOrderCallback {
+  private final class ModuleVisitor {
     private MarkerProcessorFactory markerProcessorFactory;
 
     private JSDocInfoCollector jsDocInfoCollector;
@@ -1019,16 +1329,29 @@ final class CampModuleInfoCollector {
     }
 
 
-    @Override
-    public void visit(NodeTraversal t, Node n, Node parent) {
+    /**
+     * Visit the node in the module function.
+     * 
+     * @param t
+     *          Current NodeTraversal.
+     * @param n
+     *          The target node.
+     * @param parent
+     *          The parent node of the target node.
+     * @return true if 'camp.module' or 'camp.using' is accessed as property,
+     *         otherwise false.
+     */
+    public boolean visit(NodeTraversal t, Node n, Node parent) {
       this.jsDocInfoCollector.processJSDocInfo(t, n);
-      if (!isAccessToMethod(t, n, parent)) {
-        MarkerProcessor processor = this.markerProcessorFactory
-            .getProperMarkerProcessor(t, n, parent);
-        if (processor != null) {
-          processor.processMarker(t, n, parent);
-        }
+      if (isAccessToMethod(t, n, parent)) {
+        return true;
+      }
+      MarkerProcessor processor = this.markerProcessorFactory
+          .getProperMarkerProcessor(t, n, parent);
+      if (processor != null) {
+        processor.processMarker(t, n, parent);
       }
+      return false;
     }
   }
 }
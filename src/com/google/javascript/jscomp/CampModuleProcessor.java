@@ -1,35 +1,239 @@
 package com.google.javascript.jscomp;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.javascript.jscomp.AbstractCompiler;
+import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
 import com.google.javascript.rhino.Node;
 
 /**
  * Transform the camp style module codes to google closure style module codes.
  * 
+ * <p>
+ * The ModuleInfo of a module is released as soon as the module is rewritten,
+ * so the CampContext keeps only the module ids between the compilation and
+ * the hot swaps.
+ * </p>
+ * 
  * @author aono_taketoshi
  * 
  */
 public final class CampModuleProcessor implements HotSwapCompilerPass {
 
-  private AbstractCompiler compiler;
+  static final DiagnosticType MESSAGE_MODULE_INDEX_NOT_WRITTEN = DiagnosticType.warning(
+      "JSC_MSG_MODULE_INDEX_NOT_WRITTEN.",
+      "The camp module index is not written: {0}");
+
+  static final DiagnosticType MESSAGE_USING_NOT_EXPORTED = DiagnosticType.warning(
+      "JSC_MSG_USING_NOT_EXPORTED.",
+      "The namespace {0} used by the camp.using is not exported by the module {1}.");
+
+  private final AbstractCompiler compiler;
+
+  private final CampContext context;
 
 
   public CampModuleProcessor(AbstractCompiler compiler) {
-    this.compiler = compiler;
+    this(new CampContext(compiler));
   }
 
 
+  public CampModuleProcessor(CampContext context) {
+    this.context = context;
+    this.compiler = context.getCompiler();
+  }
+
+
+  /**
+   * Collect and rewrite only the swapped script. The ModuleInfo of the script
+   * replaces the stale one, and the other modules are left as they are.
+   */
   @Override
   public void hotSwapScript(Node scriptRoot, Node originalRoot) {
-    this.compiler.process(this);
+    CampModuleTransformInfo campModuleTransformInfo = context.getCampModuleTransformInfo();
+    if (campModuleTransformInfo == null) {
+      campModuleTransformInfo = new CampModuleTransformInfo();
+      campModuleTransformInfo.setModuleIndex(context.getModuleIndex());
+      context.setCampModuleTransformInfo(campModuleTransformInfo);
+    }
+
+    String sourceName = scriptRoot.getSourceFileName();
+    campModuleTransformInfo.removeModuleInfo(sourceName);
+    new CampModuleInfoCollector(context, campModuleTransformInfo).process(scriptRoot);
+
+    ModuleInfo moduleInfo = campModuleTransformInfo.getModuleInfo(sourceName);
+    if (moduleInfo != null) {
+      new CampModuleRewriter(context, campModuleTransformInfo).process(moduleInfo);
+      checkUsings(campModuleTransformInfo,
+          CampModuleIndex.ModuleRecord.from(sourceName, moduleInfo));
+      campModuleTransformInfo.removeModuleInfo(sourceName);
+    }
   }
 
 
   @Override
   public void process(Node externs, Node root) {
     CampModuleTransformInfo campModuleTransformInfo = new CampModuleTransformInfo();
-    new CampModuleInfoCollector(compiler, campModuleTransformInfo).process(root);
-    new CampModuleRewriter(compiler, campModuleTransformInfo).process();
+    context.setCampModuleTransformInfo(campModuleTransformInfo);
+    campModuleTransformInfo.setModuleIndex(context.getModuleIndex());
+    CampModuleCache moduleCache = context.getModuleCache();
+    List<CampModuleIndex.ModuleRecord> moduleRecords = Lists.newArrayList();
+    if (moduleCache == null) {
+      new CampModuleInfoCollector(context, campModuleTransformInfo).process(root);
+      new CampModuleRewriter(context, campModuleTransformInfo).process();
+      if (context.getModuleIndex() != null) {
+        for (Map.Entry<String, ModuleInfo> entry
+            : campModuleTransformInfo.getModuleInfoMap().entrySet()) {
+          moduleRecords.add(CampModuleIndex.ModuleRecord.from(entry.getKey(), entry.getValue()));
+        }
+      }
+    } else {
+      CampModuleInfoCollector collector =
+          new CampModuleInfoCollector(context, campModuleTransformInfo);
+      CampModuleRewriter rewriter = new CampModuleRewriter(context, campModuleTransformInfo);
+      for (Node script : root.children()) {
+        processScript(script, campModuleTransformInfo, collector, rewriter, moduleCache,
+            moduleRecords);
+      }
+    }
+
+    CampModuleIndex moduleIndex = context.getModuleIndex();
+    boolean indexUpdated = false;
+    if (moduleIndex != null) {
+      List<String> sourceNames = Lists.newArrayList();
+      for (Node script : root.children()) {
+        sourceNames.add(script.getSourceFileName());
+      }
+      try {
+        moduleIndex.update(sourceNames, moduleRecords);
+        indexUpdated = true;
+      } catch (IOException e) {
+        compiler.report(JSError.make(MESSAGE_MODULE_INDEX_NOT_WRITTEN, e.toString()));
+      }
+    }
+    campModuleTransformInfo.releaseModuleInfos();
+
+    // The modules of this compilation are looked up from the updated index.
+    if (indexUpdated) {
+      for (CampModuleIndex.ModuleRecord moduleRecord : moduleRecords) {
+        checkUsings(campModuleTransformInfo, moduleRecord);
+      }
+    }
+  }
+
+
+  /**
+   * Report the 'camp.using' namespaces which are not exported by their
+   * modules, because the goog.provide calls are made from the export lists
+   * and the goog.require of such namespace is never provided. The module of
+   * the namespace 'foo.bar.Baz' is 'foo.bar', and only the known modules that
+   * have the export lists are checked. The modules are looked up from the
+   * CampModuleIndex, so the hot swapped script is also checked against the
+   * modules of the previous compilations.
+   */
+  private void checkUsings(CampModuleTransformInfo campModuleTransformInfo,
+      CampModuleIndex.ModuleRecord moduleRecord) {
+    for (String namespace : moduleRecord.getUsingList()) {
+      int index = namespace.lastIndexOf('.');
+      if (index <= 0) {
+        continue;
+      }
+      String moduleName = namespace.substring(0, index);
+      List<String> exportedList = campModuleTransformInfo.getExportedList(moduleName);
+      if (exportedList != null && !exportedList.isEmpty()
+          && !exportedList.contains(namespace)) {
+        compiler.report(JSError.make(moduleRecord.getSourceName(), -1, -1,
+            MESSAGE_USING_NOT_EXPORTED, namespace, moduleName));
+      }
+    }
+  }
+
+
+  /**
+   * Restore the script from the cache if the script is not modified, or
+   * collect and rewrite the script and keep the result to the cache. The
+   * script that can not contain the camp markers is skipped. The record of the
+   * CampModuleIndex is added to the moduleRecords for both of the restored
+   * and the rewritten script.
+   */
+  private void processScript(Node script, CampModuleTransformInfo campModuleTransformInfo,
+      CampModuleInfoCollector collector, CampModuleRewriter rewriter,
+      CampModuleCache moduleCache, List<CampModuleIndex.ModuleRecord> moduleRecords) {
+    CampMarkerFilter markerFilter = context.getMarkerFilter();
+    if (!markerFilter.mayContainMarkers(script)) {
+      markerFilter.addModuleSkip();
+      return;
+    }
+
+    String sourceName = script.getSourceFileName();
+    String hash = getContentHash(script);
+    int firstModuleId = campModuleTransformInfo.getNextModuleId();
+
+    if (hash != null) {
+      // The script whose entry can not be read is collected again.
+      CampModuleCache.Entry entry = moduleCache.get(sourceName, hash, firstModuleId);
+      if (entry != null && entry.restore(script)) {
+        if (entry.getModuleCount() > 0) {
+          campModuleTransformInfo.skipModuleIds(entry.getModuleCount());
+          context.reportCodeChange();
+        }
+        if (entry.getModuleRecord() != null) {
+          moduleRecords.add(entry.getModuleRecord());
+        }
+        return;
+      }
+    }
+
+    ErrorManager errorManager = compiler.getErrorManager();
+    int diagnosticCount = errorManager.getErrorCount() + errorManager.getWarningCount();
+    collector.process(script);
+    ModuleInfo moduleInfo = campModuleTransformInfo.getModuleInfo(sourceName);
+    CampModuleIndex.ModuleRecord moduleRecord = null;
+    if (moduleInfo != null) {
+      rewriter.process(moduleInfo);
+      moduleRecord = CampModuleIndex.ModuleRecord.from(sourceName, moduleInfo);
+      moduleRecords.add(moduleRecord);
+    }
+
+    // The script that has diagnostics is collected again to report them.
+    if (hash != null
+        && errorManager.getErrorCount() + errorManager.getWarningCount() == diagnosticCount) {
+      moduleCache.put(sourceName, hash, firstModuleId,
+          campModuleTransformInfo.getNextModuleId() - firstModuleId, script, moduleRecord);
+    }
+  }
+
+
+  /**
+   * Return the content hash of the script. The options which change the tree
+   * before this pass are also hashed, because the cache may be shared with the
+   * other targets on the disk.
+   *
+   * @return The hash, or null if the content is not available.
+   */
+  private String getContentHash(Node script) {
+    CompilerInput input = compiler.getInput(script.getInputId());
+    if (input == null || input.getSourceFile() == null || !(compiler instanceof Compiler)) {
+      return null;
+    }
+    CompilerOptions options = ((Compiler) compiler).getOptions();
+    CodingConvention convention = compiler.getCodingConvention();
+    String fingerprint = Compiler.getReleaseVersion() + "|" + options.getLanguageIn() + "|"
+        + options.closurePass + "|" + options.ideMode + "|" + options.checkSuspiciousCode + "|"
+        + options.acceptConstKeyword + "|" + options.extraAnnotationNames + "|"
+        + (convention != null ? convention.getClass().getName() : null);
+    try {
+      return Hashing.sha1()
+          .hashString(fingerprint + "\n" + input.getSourceFile().getCode(), Charsets.UTF_8)
+          .toString();
+    } catch (IOException e) {
+      return null;
+    }
   }
 
 }
@@ -1,17 +1,22 @@
 package com.google.javascript.jscomp;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.javascript.jscomp.CampModuleTransformInfo.JSDocMutator;
 import com.google.javascript.jscomp.CampModuleTransformInfo.JSDocTypeInfoMutator;
 import com.google.javascript.jscomp.CampModuleTransformInfo.LocalAliasInfo;
 import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
+import com.google.javascript.jscomp.CampModuleTransformInfo.RenameTable;
 import com.google.javascript.jscomp.CampModuleTransformInfo.TypeInfo;
-import com.google.javascript.jscomp.CampModuleTransformInfo.VarRenamePair;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.JSDocInfoBuilder;
 import com.google.javascript.rhino.JSTypeExpression;
@@ -102,7 +107,7 @@ import com.google.javascript.rhino.Token;
  */
 public class CampModuleRewriter {
 
-  private final AbstractCompiler compiler;
+  private final CampContext context;
 
   private final CodingConvention convention;
 
@@ -110,33 +115,141 @@ public class CampModuleRewriter {
 
   private final RewritePassExecutor rewritePassExecutor = new RewritePassExecutor();
 
+  /**
+   * True if the code changes are not reported until the parallel rewriting
+   * is finished.
+   */
+  private final boolean deferCodeChange;
+
+  private boolean codeChanged = false;
+
 
   /**
    * Constructor.
    * 
-   * @param compiler
-   *          The compiler class.
+   * @param context
+   *          The context of current compilation.
    * @param campModuleTransformInfo
    *          The module information holder.
    */
-  public CampModuleRewriter(AbstractCompiler compiler,
+  public CampModuleRewriter(CampContext context,
       CampModuleTransformInfo campModuleTransformInfo) {
-    this.compiler = compiler;
-    this.convention = compiler.getCodingConvention();
+    this(context, campModuleTransformInfo, false);
+  }
+
+
+  private CampModuleRewriter(CampContext context,
+      CampModuleTransformInfo campModuleTransformInfo, boolean deferCodeChange) {
+    this.context = context;
+    this.convention = context.getCompiler().getCodingConvention();
     this.campModuleTransformInfo = campModuleTransformInfo;
+    this.deferCodeChange = deferCodeChange;
   }
 
 
   /**
    * Rewrite all camp style modules to google closure library style module.
+   * The modules are rewritten in parallel if the parallelism of the
+   * CampContext is greater than 1.
    */
   public void process() {
-    for (ModuleInfo moduleInfo : campModuleTransformInfo.getModuleInfoMap().values()) {
+    Collection<ModuleInfo> moduleInfos = campModuleTransformInfo.getModuleInfoMap().values();
+    if (context.getParallelism() > 1 && moduleInfos.size() > 1) {
+      this.processInParallel(moduleInfos);
+      return;
+    }
+    for (ModuleInfo moduleInfo : moduleInfos) {
       this.rewritePassExecutor.execute(moduleInfo);
     }
   }
 
 
+  /**
+   * Rewrite each module on the fork/join pool. Each module is confined to its
+   * own script, and each task has its own rewriters, so the tasks share
+   * nothing but the read only module informations. The code change is
+   * reported once after all tasks are finished.
+   * 
+   * @param moduleInfos
+   *          The modules to rewrite.
+   */
+  private void processInParallel(Collection<ModuleInfo> moduleInfos) {
+    List<ModuleRewriteTask> tasks = Lists.newArrayList();
+    ForkJoinPool pool = new ForkJoinPool(context.getParallelism());
+    try {
+      for (ModuleInfo moduleInfo : moduleInfos) {
+        ModuleRewriteTask task = new ModuleRewriteTask(
+            new CampModuleRewriter(context, campModuleTransformInfo, true), moduleInfo);
+        tasks.add(task);
+        pool.execute(task);
+      }
+      for (ModuleRewriteTask task : tasks) {
+        task.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    for (ModuleRewriteTask task : tasks) {
+      if (task.rewriter.codeChanged) {
+        context.reportCodeChange();
+        break;
+      }
+    }
+  }
+
+
+  /**
+   * Report the code change to the compiler, or keep it until the parallel
+   * rewriting is finished.
+   */
+  private void reportCodeChange() {
+    if (this.deferCodeChange) {
+      this.codeChanged = true;
+    } else {
+      context.reportCodeChange();
+    }
+  }
+
+
+  /**
+   * The rewriting of a module that runs on the fork/join pool.
+   * 
+   * @author aono_taketoshi
+   * 
+   */
+  private static final class ModuleRewriteTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final CampModuleRewriter rewriter;
+
+    private final ModuleInfo moduleInfo;
+
+
+    public ModuleRewriteTask(CampModuleRewriter rewriter, ModuleInfo moduleInfo) {
+      this.rewriter = rewriter;
+      this.moduleInfo = moduleInfo;
+    }
+
+
+    @Override
+    protected void compute() {
+      rewriter.process(moduleInfo);
+    }
+  }
+
+
+  /**
+   * Rewrite the camp style module of a script.
+   * 
+   * @param moduleInfo
+   *          The ModuleInfo of the target script.
+   */
+  public void process(ModuleInfo moduleInfo) {
+    this.rewritePassExecutor.execute(moduleInfo);
+  }
+
+
   /**
    * Rewrite all codes using Rewriter.
    * 
@@ -186,11 +299,13 @@ public class CampModuleRewriter {
    * 
    */
   private final class UsingCallRewriter implements Rewriter {
-    private Set<Node> replacedSet = Sets.newHashSet();
+    private Set<Node> replacedSet = Sets.newIdentityHashSet();
 
 
     @Override
     public void rewrite(ModuleInfo moduleInfo) {
+      // The replaced nodes are the nodes of the module.
+      replacedSet.clear();
       for (Node usingCall : moduleInfo.getUsingCallList()) {
         rewriteUsing(moduleInfo, usingCall);
       }
@@ -226,7 +341,7 @@ public class CampModuleRewriter {
       this.rewriteVars(moduleInfo, usingCall,
           NodeUtil.newQualifiedNameNode(convention, nameNode.getString()), parent);
       parent.detachFromParent();
-      compiler.reportCodeChange();
+      reportCodeChange();
     }
 
 
@@ -247,7 +362,7 @@ public class CampModuleRewriter {
 
       expr.copyInformationFromForTree(parent);
       parent.getParent().addChildAfter(expr, parent);
-      compiler.reportCodeChange();
+      reportCodeChange();
       return nameNode;
     }
 
@@ -270,13 +385,11 @@ public class CampModuleRewriter {
       if (parent != null && parent.isVar()) {
         Node varNameNode = parent.getFirstChild();
         String varName = varNameNode.getString();
-        List<Node> aliasVarList = moduleInfo.getAliasVarList();
-        for (Node target : aliasVarList) {
-          String name = target.getString();
-          if (!moduleInfo.isForbiddenAlias(name) &&
-              name.equals(varName) && !replacedSet.contains(target)) {
-            this.replaceAlias(moduleInfo, nameNode, varNameNode, varName, target);
-            replacedSet.add(target);
+        if (!moduleInfo.isForbiddenAlias(varName)) {
+          for (Node target : moduleInfo.getAliasVarList(varName)) {
+            if (replacedSet.add(target)) {
+              this.replaceAlias(moduleInfo, nameNode, varNameNode, varName, target);
+            }
           }
         }
       }
@@ -308,7 +421,7 @@ public class CampModuleRewriter {
       Node clone = replaced.cloneTree();
       clone.copyInformationFromForTree(target);
       target.getParent().replaceChild(target, clone);
-      compiler.reportCodeChange();
+      reportCodeChange();
     }
   }
 
@@ -346,6 +459,9 @@ public class CampModuleRewriter {
        *          Current module information.
        */
       public void resolve(ModuleInfo moduleInfo) {
+        // The aliases are module local, and a module is rewritten
+        // independently of the other modules.
+        inferedTypeInfoMap.clear();
         List<LocalAliasInfo> list = moduleInfo.getLocalAliasInfoList();
         for (LocalAliasInfo localAliasInfo : list) {
           String rvalueName = localAliasInfo.getRvalue();
@@ -391,7 +507,7 @@ public class CampModuleRewriter {
         assign.setJSDocInfo(builder.build(assign));
         Node target = functionType.getFirstChild().getFirstChild();
         moduleInfo.addLocalType(new JSDocTypeInfoMutator(target, rvalueName));
-        compiler.reportCodeChange();
+        reportCodeChange();
       }
 
 
@@ -441,7 +557,7 @@ public class CampModuleRewriter {
 
       rewriteMain(moduleInfo);
 
-      compiler.reportCodeChange();
+      reportCodeChange();
 
       localAliasResolver.resolve(moduleInfo);
     }
@@ -472,7 +588,7 @@ public class CampModuleRewriter {
       Node fqn = NodeUtil.newQualifiedNameNode(convention, moduleInfo.getModuleName());
       fqn.copyInformationFromForTree(exports);
       exports.getParent().replaceChild(exports, fqn);
-      compiler.reportCodeChange();
+      reportCodeChange();
     }
 
 
@@ -493,7 +609,7 @@ public class CampModuleRewriter {
         Node expr = call.getParent();
         expr.detachFromParent();
         moduleInfo.getModuleCallNode().getLastChild().getLastChild().addChildToBack(expr);
-        compiler.reportCodeChange();
+        reportCodeChange();
       }
     }
   }
@@ -509,30 +625,31 @@ public class CampModuleRewriter {
 
     @Override
     public void rewrite(ModuleInfo moduleInfo) {
-      List<VarRenamePair> variableList = moduleInfo.getRenameTargetList();
-      for (VarRenamePair varRenamePair : variableList) {
-        Node declaration = varRenamePair.getBaseDeclaration();
-        Node target = varRenamePair.getTargetNode();
-        rewriteVarName(moduleInfo, declaration, target);
+      RenameTable renameTable = moduleInfo.getRenameTable();
+      if (renameTable == null) {
+        return;
       }
-    }
 
+      // The renamed name is decided once for each declaration before the
+      // declaration nodes themselves are rewritten.
+      String[] renamedNames = new String[renameTable.getDeclarationCount()];
+      for (int i = 0; i < renamedNames.length; i++) {
+        if (renameTable.isBaseDeclaration(i)) {
+          renamedNames[i] = moduleInfo.getRenamedVar(renameTable.getDeclaration(i).getString());
+        }
+      }
 
-    /**
-     * Rewrite variable name to global unique variable name.
-     * 
-     * @param moduleInfo
-     * @param declaration
-     * @param target
-     */
-    private void rewriteVarName(ModuleInfo moduleInfo, Node declaration, Node target) {
-      if (moduleInfo.isRenameVarBaseDeclaration(declaration)) {
-        String after = moduleInfo.getRenamedVar(target.getString());
+      boolean changed = false;
+      for (int i = 0, count = renameTable.getTargetCount(); i < count; i++) {
+        String after = renamedNames[renameTable.getTargetDeclaration(i)];
         if (after != null) {
-          target.setString(after);
-          compiler.reportCodeChange();
+          renameTable.getTarget(i).setString(after);
+          changed = true;
         }
       }
+      if (changed) {
+        reportCodeChange();
+      }
     }
   }
 
@@ -614,7 +731,7 @@ public class CampModuleRewriter {
       if (renamed != null) {
         mutator.mutate(renamed + prop);
         if (mutator.isCodeChanged()) {
-          compiler.reportCodeChange();
+          reportCodeChange();
         }
       }
     }
@@ -642,7 +759,7 @@ public class CampModuleRewriter {
       String nraName = nra.getString();
       mutator.mutate(type.replaceFirst(nraName, moduleInfo.getModuleName()));
       if (mutator.isCodeChanged()) {
-        compiler.reportCodeChange();
+        reportCodeChange();
       }
     }
 
@@ -664,21 +781,11 @@ public class CampModuleRewriter {
 
     @Override
     protected void rewriteType(String type, JSDocMutator mutator, ModuleInfo moduleInfo) {
-      int index = type.indexOf(".");
-      String prop = "";
-
-      if (index != -1) {
-        String top = type.substring(0, index);
-        prop = type.substring(index);
-        type = top;
-      }
-
-      String renamed = moduleInfo.getModuleId() + "_" + type;
-      if (renamed != null) {
-        mutator.mutate(renamed + prop);
-        if (mutator.isCodeChanged()) {
-          compiler.reportCodeChange();
-        }
+      // The qualified name like 'Local.Type' is renamed as a whole, because
+      // only its top level name is prefixed.
+      mutator.mutate(moduleInfo.getRenamedName(type));
+      if (mutator.isCodeChanged()) {
+        reportCodeChange();
       }
     }
 
@@ -705,7 +812,7 @@ public class CampModuleRewriter {
       Node closure = NodeUtil.getFunctionBody(moduleCall.getLastChild());
       closure.detachFromParent();
       moduleCall.getParent().getParent().replaceChild(moduleCall.getParent(), closure);
-      compiler.reportCodeChange();
+      reportCodeChange();
       NodeUtil.tryMergeBlock(closure);
     }
 
@@ -724,7 +831,7 @@ public class CampModuleRewriter {
         expr.copyInformationFromForTree(moduleInfo.getModuleCallNode());
         Node block = NodeUtil.getFunctionBody(moduleInfo.getModuleCallNode().getLastChild());
         block.addChildToFront(expr);
-        compiler.reportCodeChange();
+        reportCodeChange();
       }
     }
   }
@@ -1,10 +1,16 @@
 package com.google.javascript.jscomp;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -31,6 +37,86 @@ final class CampModuleTransformInfo {
    */
   private int id = 0;
 
+  /**
+   * The table of the generated names, that is shared with the
+   * CampModuleTransformInfo of the parallel collections.
+   */
+  private final CampNameTable nameTable;
+
+  /**
+   * The index of the modules of the previous compilations, or null.
+   */
+  private CampModuleIndex moduleIndex;
+
+
+  /**
+   * Constructor.
+   */
+  public CampModuleTransformInfo() {
+    this(new CampNameTable());
+  }
+
+
+  /**
+   * Constructor.
+   * 
+   * @param nameTable
+   *          The table of the generated names.
+   */
+  public CampModuleTransformInfo(CampNameTable nameTable) {
+    this.nameTable = nameTable;
+  }
+
+
+  /**
+   * Return the table of the generated names.
+   * 
+   * @return The CampNameTable.
+   */
+  public CampNameTable getNameTable() {
+    return this.nameTable;
+  }
+
+
+  /**
+   * Return the index of the modules of the previous compilations.
+   * 
+   * @return The CampModuleIndex, or null if the index is disabled.
+   */
+  public CampModuleIndex getModuleIndex() {
+    return this.moduleIndex;
+  }
+
+
+  /**
+   * Set the index of the modules of the previous compilations, that is
+   * updated with the modules of this compilation.
+   * 
+   * @param moduleIndex
+   *          The CampModuleIndex, or null.
+   */
+  public void setModuleIndex(CampModuleIndex moduleIndex) {
+    this.moduleIndex = moduleIndex;
+  }
+
+
+  /**
+   * Return the exported names of the module. The modules which are not part
+   * of this compilation are looked up from the module index.
+   * 
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The exported names, or null if the module is not found.
+   */
+  public List<String> getExportedList(String moduleName) {
+    for (ModuleInfo moduleInfo : this.moduleInfoMap.values()) {
+      if (moduleInfo.getModuleName().equals(moduleName)) {
+        return moduleInfo.getExportedList();
+      }
+    }
+    return this.moduleIndex != null ? this.moduleIndex.getExportedList(moduleName) : null;
+  }
+
 
   /**
    * Put new ModuleInfo.
@@ -45,6 +131,23 @@ final class CampModuleTransformInfo {
   }
 
 
+  /**
+   * Put the ModuleInfo collected by the other CampModuleTransformInfo, and
+   * give it the next module id. The module local variables are renamed with
+   * the new module id.
+   * 
+   * @param sourceFileName
+   *          The source file name.
+   * @param moduleInfo
+   *          The ModuleInfo.
+   */
+  public void adoptModuleInfo(String sourceFileName, ModuleInfo moduleInfo) {
+    moduleInfo.setModuleNumber(this.id);
+    this.id++;
+    this.moduleInfoMap.put(sourceFileName, moduleInfo);
+  }
+
+
   /**
    * Get ModuleInfo from the source file name.
    * 
@@ -69,6 +172,52 @@ final class CampModuleTransformInfo {
   }
 
 
+  /**
+   * Remove the ModuleInfo of the source file, that is collected again when
+   * the file is hot swapped.
+   * 
+   * @param sourceFileName
+   *          The filename of the removed ModuleInfo.
+   * @return The removed ModuleInfo, or null if not found.
+   */
+  public ModuleInfo removeModuleInfo(String sourceFileName) {
+    return this.moduleInfoMap.remove(sourceFileName);
+  }
+
+
+  /**
+   * Release all ModuleInfo, that hold the nodes of the rewritten modules. The
+   * module ids are kept, so the modules collected by the following hot swaps
+   * are given the new module ids.
+   */
+  public void releaseModuleInfos() {
+    this.moduleInfoMap.clear();
+    this.nameTable.clear();
+  }
+
+
+  /**
+   * Return the module id that is given to the next ModuleInfo.
+   * 
+   * @return The next module id.
+   */
+  public int getNextModuleId() {
+    return this.id;
+  }
+
+
+  /**
+   * Skip the module ids of the modules that are not collected, because they
+   * are restored from the CampModuleCache.
+   * 
+   * @param count
+   *          The number of the skipped modules.
+   */
+  public void skipModuleIds(int count) {
+    this.id += count;
+  }
+
+
   /**
    * Return the map that has the source filenames and ModuleInfos.
    * 
@@ -260,54 +409,153 @@ final class CampModuleTransformInfo {
 
 
   /**
-   * This class holds variable declaration node and used node.
+   * This class holds the module local variable declarations and their used
+   * nodes in the parallel arrays. The declarations are indexed in the order of
+   * the registration, and each used node refers to its declaration by the
+   * index, so no object is created for each reference.
    * 
    * @author aono_taketoshi
    * 
    */
-  static final class VarRenamePair {
+  static final class RenameTable {
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The map from the declaration node to its index.
+     */
+    private final Map<Node, Integer> declarationIndexMap =
+        new IdentityHashMap<Node, Integer>(INITIAL_CAPACITY);
+
     /**
-     * The declaration node.
+     * The declaration nodes.
      */
-    private Node baseDeclaration;
+    private Node[] declarations = new Node[INITIAL_CAPACITY];
 
     /**
-     * The used node.
+     * Whether the declaration is the base declaration of the renamed variable
+     * or not.
      */
-    private Node targetNode;
+    private boolean[] baseDeclarations = new boolean[INITIAL_CAPACITY];
 
+    private int declarationCount = 0;
 
     /**
-     * Constructor.
+     * The used nodes.
+     */
+    private Node[] targets = new Node[INITIAL_CAPACITY];
+
+    /**
+     * The declaration indexes of the used nodes.
+     */
+    private int[] targetDeclarations = new int[INITIAL_CAPACITY];
+
+    private int targetCount = 0;
+
+
+    /**
+     * Return the index of the declaration, and register the declaration if it
+     * is not registered yet.
      * 
-     * @param baseDeclaration
+     * @param declaration
      *          The declaration node.
-     * @param targetNode
-     *          The used node.
+     * @return The declaration index.
      */
-    public VarRenamePair(Node baseDeclaration, Node targetNode) {
-      this.baseDeclaration = baseDeclaration;
-      this.targetNode = targetNode;
+    private int indexOf(Node declaration) {
+      Integer index = declarationIndexMap.get(declaration);
+      if (index != null) {
+        return index.intValue();
+      }
+
+      if (declarationCount == declarations.length) {
+        int capacity = declarationCount * 2;
+        declarations = Arrays.copyOf(declarations, capacity);
+        baseDeclarations = Arrays.copyOf(baseDeclarations, capacity);
+      }
+      declarations[declarationCount] = declaration;
+      declarationIndexMap.put(declaration, Integer.valueOf(declarationCount));
+      return declarationCount++;
     }
 
 
     /**
-     * Return the variable declaration node.
+     * Mark the declaration as the base declaration of the renamed variable.
      * 
-     * @return The variable declaration node.
+     * @param declaration
+     *          The declaration node.
      */
-    public Node getBaseDeclaration() {
-      return baseDeclaration;
+    public void addBaseDeclaration(Node declaration) {
+      // The index is taken before the array is referenced, because the array
+      // may be grown.
+      int index = indexOf(declaration);
+      baseDeclarations[index] = true;
+    }
+
+
+    public boolean isBaseDeclaration(Node declaration) {
+      Integer index = declarationIndexMap.get(declaration);
+      return index != null && baseDeclarations[index.intValue()];
     }
 
 
     /**
-     * Return the variable used node.
+     * Add the used node of the declared variable.
      * 
-     * @return The variable used node.
+     * @param declaration
+     *          The declaration node.
+     * @param target
+     *          The used node.
      */
-    public Node getTargetNode() {
-      return targetNode;
+    public void addTarget(Node declaration, Node target) {
+      int index = indexOf(declaration);
+      if (targetCount == targets.length) {
+        int capacity = targetCount * 2;
+        targets = Arrays.copyOf(targets, capacity);
+        targetDeclarations = Arrays.copyOf(targetDeclarations, capacity);
+      }
+      targets[targetCount] = target;
+      targetDeclarations[targetCount] = index;
+      targetCount++;
+    }
+
+
+    public int getDeclarationCount() {
+      return declarationCount;
+    }
+
+
+    public Node getDeclaration(int index) {
+      Preconditions.checkElementIndex(index, declarationCount);
+      return declarations[index];
+    }
+
+
+    public boolean isBaseDeclaration(int index) {
+      Preconditions.checkElementIndex(index, declarationCount);
+      return baseDeclarations[index];
+    }
+
+
+    public int getTargetCount() {
+      return targetCount;
+    }
+
+
+    public Node getTarget(int index) {
+      Preconditions.checkElementIndex(index, targetCount);
+      return targets[index];
+    }
+
+
+    /**
+     * Return the declaration index of the used node.
+     * 
+     * @param index
+     *          The index of the used node.
+     * @return The declaration index.
+     */
+    public int getTargetDeclaration(int index) {
+      Preconditions.checkElementIndex(index, targetCount);
+      return targetDeclarations[index];
     }
   }
 
@@ -457,6 +705,13 @@ final class CampModuleTransformInfo {
    * 
    */
   final class ModuleInfo {
+    /**
+     * The initial capacity of the collections. The collections are created
+     * when the first element is added, and most modules have only a few
+     * elements.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
     /**
      * The 'camp.module' call node.
      */
@@ -474,6 +729,11 @@ final class CampModuleTransformInfo {
      */
     private String moduleName;
 
+    /**
+     * The module id made from the module name, that is not numbered.
+     */
+    private String moduleIdBase;
+
     /**
      * Current module id.
      */
@@ -490,71 +750,74 @@ final class CampModuleTransformInfo {
      */
     private List<String> exportedList;
 
+    // The following collections are null until the first element is added.
+
     /**
      * All 'camp.using' call nodes of the camp style module.
      */
-    private List<Node> usingCallList = Lists.newArrayList();
+    private List<Node> usingCallList;
 
     /**
      * All exported value set of the camp style module.
      */
-    private Set<Node> exportsSet = Sets.newLinkedHashSet();
+    private Set<Node> exportsSet;
 
     /**
      * All aliased types map of the camp style module.
      */
-    private Map<String, String> aliasMap = Maps.newHashMap();
+    private Map<String, String> aliasMap;
 
     /**
-     * All rename information of the module local variable of the camp style
-     * module.
+     * All module local variable names of the camp style module, that are
+     * renamed with the module id.
      */
-    private Map<String, String> varRenameMap = Maps.newHashMap();
+    private Set<String> renamedVarSet;
 
     /**
-     * All module local variable declared nodes.
+     * The renamed names of the module local names, that are made for the
+     * current module id.
      */
-    private Set<Node> renameVarBaseDeclaration = Sets.newHashSet();
+    private Map<String, String> renamedNameMap;
 
     /**
-     * All module local variable used nodes.
+     * All module local variable declared nodes and used nodes.
      */
-    private List<VarRenamePair> renameTargetList = Lists.newArrayList();
+    private RenameTable renameTable;
 
     /**
      * All exported type list of the camp style module.
      */
-    private List<JSDocMutator> exportedTypeList = Lists.newArrayList();
+    private List<JSDocMutator> exportedTypeList;
 
     /**
      * All aliased type list of the camp style module.
      */
-    private List<JSDocMutator> aliasTypeList = Lists.newArrayList();
+    private List<JSDocMutator> aliasTypeList;
 
     /**
-     * All module local variable nodes.
+     * All references of the 'camp.using' aliases, indexed by the alias name.
      */
-    private List<Node> aliasVarList = Lists.newArrayList();
+    private ArrayListMultimap<String, Node> aliasVarMap;
 
     /**
      * All module local type list.
      */
-    private List<JSDocMutator> localTypeList = Lists.newArrayList();
+    private List<JSDocMutator> localTypeList;
 
     /**
      * All type information that are liked by the type name.
      */
-    private Map<String, TypeInfo> typeMap = Maps.newHashMap();
+    private Map<String, TypeInfo> typeMap;
 
     /**
      * All module local alias information map.
      */
-    private List<LocalAliasInfo> localAliasInfoList = Lists.newArrayList();
+    private List<LocalAliasInfo> localAliasInfoList;
 
     /**
      * All forbidden alias set.
      */
-    private Set<String> forbiddenAliasSet = Sets.newHashSet();
+    private Set<String> forbiddenAliasSet;
 
 
     /**
@@ -572,12 +835,25 @@ final class CampModuleTransformInfo {
     private ModuleInfo(String moduleName, String moduleId, Node moduleCallNode, Node nra) {
       this.moduleCallNode = moduleCallNode;
       this.moduleName = moduleName;
-      this.moduleId = moduleId + "_" + id;
+      this.moduleIdBase = moduleId;
       this.nra = nra;
+      this.setModuleNumber(id);
       id++;
     }
 
 
+    /**
+     * Number the module id.
+     * 
+     * @param number
+     *          The unique number of the module.
+     */
+    private void setModuleNumber(int number) {
+      this.moduleId = nameTable.getNumberedModuleId(this.moduleIdBase, number);
+      this.renamedNameMap = null;
+    }
+
+
     public List<String> getExportedList() {
       return exportedList;
     }
@@ -599,12 +875,15 @@ final class CampModuleTransformInfo {
 
 
     public void addUsingCall(Node usingCall) {
+      if (this.usingCallList == null) {
+        this.usingCallList = Lists.newArrayListWithCapacity(INITIAL_CAPACITY);
+      }
       this.usingCallList.add(usingCall);
     }
 
 
     public List<Node> getUsingCallList() {
-      return this.usingCallList;
+      return this.usingCallList != null ? this.usingCallList : ImmutableList.<Node> of();
     }
 
 
@@ -629,138 +908,221 @@ final class CampModuleTransformInfo {
 
 
     public void addExports(Node exports) {
+      if (this.exportsSet == null) {
+        this.exportsSet = Sets.newLinkedHashSetWithExpectedSize(INITIAL_CAPACITY);
+      }
       this.exportsSet.add(exports);
     }
 
 
     public Set<Node> getExportsSet() {
-      return this.exportsSet;
+      return this.exportsSet != null ? this.exportsSet : ImmutableSet.<Node> of();
     }
 
 
     public boolean hasExports(Node n) {
-      return this.exportsSet.contains(n);
+      return this.exportsSet != null && this.exportsSet.contains(n);
     }
 
 
     public void putAliasName(String name, String qualifiedName) {
+      if (this.aliasMap == null) {
+        this.aliasMap = Maps.newHashMapWithExpectedSize(INITIAL_CAPACITY);
+      }
       this.aliasMap.put(name, qualifiedName);
     }
 
 
     public String getAliasName(String name) {
-      return this.aliasMap.get(name);
+      return this.aliasMap != null ? this.aliasMap.get(name) : null;
+    }
+
+
+    public Map<String, String> getAliasMap() {
+      return this.aliasMap != null ? this.aliasMap : ImmutableMap.<String, String> of();
     }
 
 
-    public void putRenamedVar(String before, String after) {
-      this.varRenameMap.put(before, after);
+    public void addRenamedVar(String name) {
+      if (this.renamedVarSet == null) {
+        this.renamedVarSet = Sets.newHashSetWithExpectedSize(INITIAL_CAPACITY);
+      }
+      this.renamedVarSet.add(name);
+    }
+
+
+    public boolean hasRenamedVar(String name) {
+      return this.renamedVarSet != null && this.renamedVarSet.contains(name);
     }
 
 
     public String getRenamedVar(String before) {
-      return this.varRenameMap.get(before);
+      return hasRenamedVar(before) ? getRenamedName(before) : null;
+    }
+
+
+    /**
+     * Return the global unique name of the module local name. The name is made
+     * once for each module id.
+     * 
+     * @param name
+     *          The module local name, or the qualified name whose top level
+     *          name is the module local name.
+     * @return The renamed name.
+     */
+    public String getRenamedName(String name) {
+      if (this.renamedNameMap == null) {
+        this.renamedNameMap = Maps.newHashMapWithExpectedSize(INITIAL_CAPACITY);
+      }
+      String renamed = this.renamedNameMap.get(name);
+      if (renamed == null) {
+        renamed = nameTable.getRenamedName(this.moduleId, name);
+        this.renamedNameMap.put(name, renamed);
+      }
+      return renamed;
     }
 
 
     public void addRenameTarget(Node declaration, Node varName) {
-      VarRenamePair varRenamePair = new VarRenamePair(declaration, varName);
-      renameTargetList.add(varRenamePair);
+      getOrCreateRenameTable().addTarget(declaration, varName);
     }
 
 
-    public List<VarRenamePair> getRenameTargetList() {
-      return this.renameTargetList;
+    /**
+     * Return the table of the module local variables.
+     * 
+     * @return The RenameTable, or null if the module has no module local
+     *         variable.
+     */
+    public RenameTable getRenameTable() {
+      return this.renameTable;
+    }
+
+
+    private RenameTable getOrCreateRenameTable() {
+      if (this.renameTable == null) {
+        this.renameTable = new RenameTable();
+      }
+      return this.renameTable;
     }
 
 
     public void addAliasType(JSDocMutator mutator) {
+      if (this.aliasTypeList == null) {
+        this.aliasTypeList = Lists.newArrayListWithCapacity(INITIAL_CAPACITY);
+      }
       this.aliasTypeList.add(mutator);
     }
 
 
     public List<JSDocMutator> getAliasTypeList() {
-      return this.aliasTypeList;
+      return this.aliasTypeList != null ? this.aliasTypeList : ImmutableList.<JSDocMutator> of();
     }
 
 
-    public List<Node> getAliasVarList() {
-      return aliasVarList;
+    public List<Node> getAliasVarList(String name) {
+      return this.aliasVarMap != null ? this.aliasVarMap.get(name) : ImmutableList.<Node> of();
     }
 
 
     public void addAliasVar(Node aliasVar) {
-      this.aliasVarList.add(aliasVar);
+      if (this.aliasVarMap == null) {
+        this.aliasVarMap = ArrayListMultimap.create();
+      }
+      this.aliasVarMap.put(aliasVar.getString(), aliasVar);
     }
 
 
     public boolean getAliasVar(Node aliasVar) {
-      return this.aliasVarList.contains(aliasVar);
+      return this.aliasVarMap != null
+          && this.aliasVarMap.containsEntry(aliasVar.getString(), aliasVar);
     }
 
 
     public void addExportedType(JSDocMutator mutator) {
+      if (this.exportedTypeList == null) {
+        this.exportedTypeList = Lists.newArrayListWithCapacity(INITIAL_CAPACITY);
+      }
       this.exportedTypeList.add(mutator);
     }
 
 
     public List<JSDocMutator> getExportedTypeList() {
-      return this.exportedTypeList;
+      return this.exportedTypeList != null
+          ? this.exportedTypeList : ImmutableList.<JSDocMutator> of();
     }
 
 
     public void addLocalType(JSDocMutator mutator) {
+      if (this.localTypeList == null) {
+        this.localTypeList = Lists.newArrayListWithCapacity(INITIAL_CAPACITY);
+      }
       this.localTypeList.add(mutator);
     }
 
 
     public List<JSDocMutator> getLocalTypeList() {
-      return this.localTypeList;
+      return this.localTypeList != null ? this.localTypeList : ImmutableList.<JSDocMutator> of();
     }
 
 
     public void addRenameVarBaseDeclaration(Node base) {
-      this.renameVarBaseDeclaration.add(base);
+      getOrCreateRenameTable().addBaseDeclaration(base);
     }
 
 
     public boolean isRenameVarBaseDeclaration(Node base) {
-      return this.renameVarBaseDeclaration.contains(base);
+      return this.renameTable != null && this.renameTable.isBaseDeclaration(base);
     }
 
 
     public TypeInfo getTypeInfo(String name) {
-      return this.typeMap.get(name);
+      return this.typeMap != null ? this.typeMap.get(name) : null;
+    }
+
+
+    public Set<String> getTypeNames() {
+      return this.typeMap != null ? this.typeMap.keySet() : ImmutableSet.<String> of();
     }
 
 
     public void setTypeInfo(TypeInfo typeInfo) {
+      if (this.typeMap == null) {
+        this.typeMap = Maps.newHashMapWithExpectedSize(INITIAL_CAPACITY);
+      }
       this.typeMap.put(typeInfo.getName(), typeInfo);
     }
 
 
     public void addLocalAliasInfo(LocalAliasInfo localAliasInfo) {
+      if (this.localAliasInfoList == null) {
+        this.localAliasInfoList = Lists.newArrayListWithCapacity(INITIAL_CAPACITY);
+      }
       this.localAliasInfoList.add(localAliasInfo);
     }
 
 
     public List<LocalAliasInfo> getLocalAliasInfoList() {
-      return this.localAliasInfoList;
+      return this.localAliasInfoList != null
+          ? this.localAliasInfoList : ImmutableList.<LocalAliasInfo> of();
     }
 
 
     public void addForbiddenAlias(String name) {
+      if (this.forbiddenAliasSet == null) {
+        this.forbiddenAliasSet = Sets.newHashSetWithExpectedSize(INITIAL_CAPACITY);
+      }
       this.forbiddenAliasSet.add(name);
     }
 
 
     public boolean isForbiddenAlias(String name) {
-      return this.forbiddenAliasSet.contains(name);
+      return this.forbiddenAliasSet != null && this.forbiddenAliasSet.contains(name);
     }
 
 
     public Set<String> getForbiddenAliasSet() {
-      return this.forbiddenAliasSet;
+      return this.forbiddenAliasSet != null ? this.forbiddenAliasSet : ImmutableSet.<String> of();
     }
   }
 }
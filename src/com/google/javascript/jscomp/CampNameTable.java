@@ -0,0 +1,96 @@
+package com.google.javascript.jscomp;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * The table of the names generated by the camp passes of a compilation. The
+ * module ids and the renamed module local names are interned, so the AST and
+ * the following passes share one String instance for each generated name.
+ *
+ * <p>
+ * The table is shared by the parallel collections, so it is thread safe.
+ * </p>
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampNameTable {
+  private static final char MODULE_NAME_SEPARATOR = '.';
+
+  private static final char MODULE_ID_SEPARATOR = '_';
+
+  /**
+   * The interned names.
+   */
+  private final ConcurrentMap<String, String> nameMap = new MapMaker().makeMap();
+
+  /**
+   * The module ids that are not numbered, keyed by the module name.
+   */
+  private final ConcurrentMap<String, String> moduleIdMap = new MapMaker().makeMap();
+
+
+  /**
+   * Return the module id of the module name, that is not numbered. The id of
+   * 'foo.bar.baz' is 'foo_bar_baz'.
+   *
+   * @param moduleName
+   *          The full qualified module name.
+   * @return The module id.
+   */
+  public String getModuleId(String moduleName) {
+    String moduleId = moduleIdMap.get(moduleName);
+    if (moduleId == null) {
+      moduleId = intern(moduleName.replace(MODULE_NAME_SEPARATOR, MODULE_ID_SEPARATOR));
+      moduleIdMap.putIfAbsent(moduleName, moduleId);
+    }
+    return moduleId;
+  }
+
+
+  /**
+   * Return the module id numbered with the unique number of the module.
+   *
+   * @param moduleId
+   *          The module id that is not numbered.
+   * @param number
+   *          The unique number of the module.
+   * @return The numbered module id.
+   */
+  public String getNumberedModuleId(String moduleId, int number) {
+    return intern(moduleId + MODULE_ID_SEPARATOR + number);
+  }
+
+
+  /**
+   * Return the global unique name of the module local name.
+   *
+   * @param moduleId
+   *          The numbered module id.
+   * @param name
+   *          The module local name, or the qualified name whose top level
+   *          name is the module local name.
+   * @return The renamed name.
+   */
+  public String getRenamedName(String moduleId, String name) {
+    return intern(moduleId + MODULE_ID_SEPARATOR + name);
+  }
+
+
+  private String intern(String name) {
+    String interned = nameMap.putIfAbsent(name, name);
+    return interned != null ? interned : name;
+  }
+
+
+  /**
+   * Release all names. The names that are already used by the AST are not
+   * affected, but the names generated after this are not shared with them.
+   */
+  public void clear() {
+    this.moduleIdMap.clear();
+    this.nameMap.clear();
+  }
+}
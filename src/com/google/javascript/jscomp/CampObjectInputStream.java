@@ -0,0 +1,121 @@
+package com.google.javascript.jscomp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The object stream that reads only the classes of the parsed trees. The
+ * snapshot of the externs and the on-disk module cache are read by this
+ * stream, so the file written by others can not make the compiler
+ * instantiate any other serializable class.
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampObjectInputStream extends ObjectInputStream {
+
+  /**
+   * The classes of the trees, the JSDoc annotations and the cache entries.
+   */
+  private static final Set<String> ALLOWED_CLASSES = ImmutableSet.of(
+      "java.lang.Boolean",
+      "java.lang.Double",
+      "java.lang.Enum",
+      "java.lang.Integer",
+      "java.lang.Number",
+      "java.io.File",
+      "java.util.ArrayList",
+      "java.util.HashMap",
+      "java.util.HashSet",
+      "java.util.LinkedHashMap",
+      "java.util.LinkedHashSet",
+      "com.google.common.collect.ImmutableList$SerializedForm",
+      "com.google.common.collect.ImmutableMap$SerializedForm",
+      "com.google.common.collect.ImmutableSet$SerializedForm",
+      "com.google.javascript.jscomp.CampInputCache$ExternTemplate",
+      "com.google.javascript.jscomp.CampModuleCache$Entry",
+      "com.google.javascript.jscomp.CampModuleIndex$ModuleRecord",
+      "com.google.javascript.jscomp.SourceFile",
+      "com.google.javascript.jscomp.SourceFile$OnDisk",
+      "com.google.javascript.jscomp.SourceFile$Preloaded",
+      "com.google.javascript.rhino.InputId",
+      "com.google.javascript.rhino.JSDocInfo",
+      "com.google.javascript.rhino.JSTypeExpression",
+      "com.google.javascript.rhino.Node",
+      "com.google.javascript.rhino.SourcePosition");
+
+  /**
+   * The nested classes of the node and the JSDoc annotation.
+   */
+  private static final String[] ALLOWED_PREFIXES = {
+      "com.google.javascript.rhino.Node$",
+      "com.google.javascript.rhino.JSDocInfo$"};
+
+
+  /**
+   * Constructor.
+   *
+   * @param in
+   *          The stream to read.
+   * @throws IOException
+   */
+  public CampObjectInputStream(InputStream in) throws IOException {
+    super(in);
+  }
+
+
+  @Override
+  protected Class<?> resolveClass(ObjectStreamClass desc)
+      throws IOException, ClassNotFoundException {
+    if (!isAllowed(desc.getName())) {
+      throw new InvalidClassException(desc.getName(), "The class is not allowed.");
+    }
+    return super.resolveClass(desc);
+  }
+
+
+  /**
+   * Check whether the class can be read or not. The array is allowed if its
+   * component is allowed.
+   *
+   * @param name
+   *          The binary name of the class.
+   * @return true if the class can be read.
+   */
+  static boolean isAllowed(String name) {
+    int dimensions = 0;
+    while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+      dimensions++;
+    }
+    if (dimensions > 0) {
+      String component = name.substring(dimensions);
+      if (component.length() == 1) {
+        // The primitive type.
+        return true;
+      }
+      if (!component.startsWith("L") || !component.endsWith(";")) {
+        return false;
+      }
+      name = component.substring(1, component.length() - 1);
+      if (name.equals("java.lang.Object") || name.equals("java.lang.String")) {
+        return true;
+      }
+    }
+
+    if (ALLOWED_CLASSES.contains(name)) {
+      return true;
+    }
+    for (String prefix : ALLOWED_PREFIXES) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -18,25 +18,28 @@ public class CampPassConfig extends DefaultPassConfig {
   @SuppressWarnings("unused")
   private CompilerOptions options;
 
+  private final CampContext context;
+
   ImmutableList<HotSwapPassFactory> SPECIAL_PASSES = ImmutableList.of(
       new HotSwapPassFactory("campModuleProcessor", true) {
         @Override
         protected HotSwapCompilerPass create(AbstractCompiler compiler) {
-          return new CampModuleProcessor(compiler);
+          return new CampModuleProcessor(context);
         }
       },
 
       new HotSwapPassFactory("campFactoryInjector", true) {
         @Override
         protected HotSwapCompilerPass create(AbstractCompiler compiler) {
-          return new FactoryInjectorProcessor(compiler);
+          return new FactoryInjectorProcessor(context);
         }
       });
 
 
-  public CampPassConfig(CompilerOptions option) {
+  public CampPassConfig(CompilerOptions option, CampContext context) {
     super(option);
     this.options = option;
+    this.context = context;
   }
 
 
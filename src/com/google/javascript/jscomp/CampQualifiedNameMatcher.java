@@ -0,0 +1,71 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.Preconditions;
+import com.google.javascript.rhino.Node;
+
+/**
+ * The matcher of a qualified name like 'camp.module'. The name is split to
+ * the interned names when the matcher is created, and the node is matched by
+ * its shape, so the matching creates no string unlike
+ * {@link Node#getQualifiedName()}.
+ *
+ * @author aono_taketoshi
+ *
+ */
+final class CampQualifiedNameMatcher {
+
+  private final String qualifiedName;
+
+  /**
+   * The names of the qualified name, that is ['camp', 'module'] for
+   * 'camp.module'.
+   */
+  private final String[] names;
+
+
+  /**
+   * Constructor.
+   *
+   * @param qualifiedName
+   *          The qualified name like 'camp.module'.
+   */
+  public CampQualifiedNameMatcher(String qualifiedName) {
+    this.qualifiedName = qualifiedName;
+    this.names = qualifiedName.split("\\.");
+    for (int i = 0; i < names.length; i++) {
+      Preconditions.checkArgument(!names[i].isEmpty(), qualifiedName);
+      names[i] = names[i].intern();
+    }
+  }
+
+
+  /**
+   * Return the qualified name.
+   *
+   * @return The qualified name.
+   */
+  public String getQualifiedName() {
+    return this.qualifiedName;
+  }
+
+
+  /**
+   * Check whether the node is the qualified name or not.
+   *
+   * @param n
+   *          The NAME or GETPROP node.
+   * @return true if the qualified name of the node is same as the matcher,
+   *         otherwise false.
+   */
+  public boolean matches(Node n) {
+    Node current = n;
+    for (int i = names.length - 1; i > 0; i--) {
+      if (current == null || !current.isGetProp()
+          || !names[i].equals(current.getLastChild().getString())) {
+        return false;
+      }
+      current = current.getFirstChild();
+    }
+    return current != null && current.isName() && names[0].equals(current.getString());
+  }
+}
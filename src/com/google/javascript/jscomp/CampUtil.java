@@ -11,9 +11,6 @@ import com.google.javascript.rhino.Token;
  */
 public class CampUtil {
 
-  private static AbstractCompiler compiler;
-
-
   /**
    * Return the statement beggining parent node.
    * 
@@ -40,51 +37,4 @@ public class CampUtil {
 
     return null;
   }
-
-
-  /**
-   * Report error.
-   * 
-   * @param n
-   *          The error occurrence node.
-   * @param diagnosticType
-   *          Error message.
-   * @param arguments
-   *          Error message arguments.
-   */
-  static void report(Node n, DiagnosticType diagnosticType,
-      String... arguments) {
-    JSError error = JSError.make(
-        n.getSourceFileName(), n, diagnosticType, arguments);
-    compiler.report(error);
-  }
-
-
-  /**
-   * Set the compiler.
-   * 
-   * @param compiler
-   *          The compiler
-   */
-  static void setCompiler(AbstractCompiler compiler) {
-    CampUtil.compiler = compiler;
-  }
-
-
-  /**
-   * Return the compiler.
-   * 
-   * @return The compiler.
-   */
-  static AbstractCompiler getCompiler() {
-    return compiler;
-  }
-
-
-  /**
-   * Report code has changed.
-   */
-  static void reportCodeChange() {
-    compiler.reportCodeChange();
-  }
 }
@@ -1,5 +1,6 @@
 package com.google.javascript.jscomp;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +23,7 @@ public class FactoryInjectorInfo {
 
   private List<InjectInfo> InjectInfoList = Lists.newArrayList();
 
-  private Map<String, Node> providerCallMap = Maps.newHashMap();
+  private Map<String, Integer> scriptIdMap = Maps.newHashMap();
 
 
   /**
@@ -67,6 +68,113 @@ public class FactoryInjectorInfo {
   }
 
 
+  /**
+   * Return the dependency injection information of a script.
+   * 
+   * @param sourceFileName
+   *          The source file name of the script.
+   * @return The dependency injection information list.
+   */
+  public List<InjectInfo> getInjectInfoList(String sourceFileName) {
+    List<InjectInfo> ret = Lists.newArrayList();
+    for (InjectInfo injectInfo : this.InjectInfoList) {
+      if (sourceFileName.equals(injectInfo.getSourceFileName())) {
+        ret.add(injectInfo);
+      }
+    }
+    return ret;
+  }
+
+
+  /**
+   * Return the type information declared in a script.
+   * 
+   * @param sourceFileName
+   *          The source file name of the script.
+   * @return The type information list.
+   */
+  public List<TypeInfo> getTypeInfoList(String sourceFileName) {
+    List<TypeInfo> ret = Lists.newArrayList();
+    for (TypeInfo typeInfo : this.typeInfoMap.values()) {
+      if (sourceFileName.equals(typeInfo.getSourceFileName())) {
+        ret.add(typeInfo);
+      }
+    }
+    return ret;
+  }
+
+
+  /**
+   * Check whether the type is a target of any dependency injection or not.
+   * 
+   * @param name
+   *          The qualified name of the type.
+   * @return true if the type is injected, otherwise false.
+   */
+  public boolean isInjected(String name) {
+    for (InjectInfo injectInfo : this.InjectInfoList) {
+      if (name.equals(injectInfo.getTargetName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Remove the type information and the dependency injection information of
+   * a script, that are collected again when the script is hot swapped.
+   * 
+   * @param sourceFileName
+   *          The source file name of the script.
+   */
+  public void removeScript(String sourceFileName) {
+    Iterator<TypeInfo> typeInfoIterator = this.typeInfoMap.values().iterator();
+    while (typeInfoIterator.hasNext()) {
+      if (sourceFileName.equals(typeInfoIterator.next().getSourceFileName())) {
+        typeInfoIterator.remove();
+      }
+    }
+
+    Iterator<InjectInfo> injectInfoIterator = this.InjectInfoList.iterator();
+    while (injectInfoIterator.hasNext()) {
+      if (sourceFileName.equals(injectInfoIterator.next().getSourceFileName())) {
+        injectInfoIterator.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Release the nodes of the dependency injection calls, that are detached
+   * from the tree by the rewriting. The names of the calls are kept, because
+   * the following hot swaps look up the injected types.
+   */
+  public void releaseInjectCalls() {
+    for (InjectInfo injectInfo : this.InjectInfoList) {
+      injectInfo.node = null;
+    }
+  }
+
+
+  /**
+   * Return the id of a script. The id is assigned when the script is found
+   * first, and never changed by the hot swaps.
+   * 
+   * @param sourceFileName
+   *          The source file name of the script.
+   * @return The script id.
+   */
+  public int getScriptId(String sourceFileName) {
+    Integer id = this.scriptIdMap.get(sourceFileName);
+    if (id == null) {
+      id = this.scriptIdMap.size();
+      this.scriptIdMap.put(sourceFileName, id);
+    }
+    return id;
+  }
+
+
   /**
    * This class holds informations that is used to decide factory type.
    * 
@@ -76,20 +184,53 @@ public class FactoryInjectorInfo {
   public static final class InjectInfo {
     private Node node;
 
+    private String sourceFileName;
+
+    private String targetName;
+
     private boolean isInjectOnce = false;
 
 
     public InjectInfo(Node node, boolean isInjectOnce) {
       this.node = node;
+      this.sourceFileName = node.getSourceFileName();
+      this.targetName = node.getFirstChild().getNext().getQualifiedName();
       this.isInjectOnce = isInjectOnce;
     }
 
 
+    /**
+     * Return the dependency injection call.
+     * 
+     * @return The call node, or null if the call is already rewritten.
+     */
     public Node getNode() {
       return this.node;
     }
 
 
+    /**
+     * Return the source file name of the inject call. The name is kept after
+     * the call is rewritten.
+     * 
+     * @return The source file name.
+     */
+    public String getSourceFileName() {
+      return this.sourceFileName;
+    }
+
+
+    /**
+     * Return the qualified name of the injected constructor.
+     * 
+     * @return The constructor name, or null if the target is not a qualified
+     *         name.
+     */
+    public String getTargetName() {
+      return this.targetName;
+    }
+
+
     public boolean isInjectOnce() {
       return this.isInjectOnce;
     }
@@ -105,6 +246,8 @@ public class FactoryInjectorInfo {
   public static class TypeInfo {
     private Node constructorNode;
 
+    private String sourceFileName;
+
     private String name;
 
     private String aliasName;
@@ -118,6 +261,7 @@ public class FactoryInjectorInfo {
 
     public TypeInfo(String name, Node constructorNode, JSDocInfo jsDocInfo) {
       this.constructorNode = constructorNode;
+      this.sourceFileName = constructorNode.getSourceFileName();
       this.name = name;
       this.jsDocInfo = jsDocInfo;
     }
@@ -131,6 +275,14 @@ public class FactoryInjectorInfo {
     }
 
 
+    /**
+     * @return the source file name of the constructorNode
+     */
+    public String getSourceFileName() {
+      return sourceFileName;
+    }
+
+
     /**
      * @return the constructorNode
      */
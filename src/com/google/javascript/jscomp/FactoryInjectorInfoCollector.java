@@ -2,9 +2,10 @@ package com.google.javascript.jscomp;
 
 import java.util.List;
 
+import com.google.common.collect.Lists;
 import com.google.javascript.jscomp.FactoryInjectorInfo.InjectInfo;
 import com.google.javascript.jscomp.FactoryInjectorInfo.TypeInfo;
-import com.google.javascript.jscomp.NodeTraversal.AbstractPostOrderCallback;
+import com.google.javascript.jscomp.NodeTraversal.Callback;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.Node;
 import com.google.javascript.rhino.Token;
@@ -21,6 +22,12 @@ public class FactoryInjectorInfoCollector {
 
   private static final String INJECT_ONCE = "camp.utils.dependencies.inject.once";
 
+  private static final CampQualifiedNameMatcher INJECT_MATCHER =
+      new CampQualifiedNameMatcher(INJECT);
+
+  private static final CampQualifiedNameMatcher INJECT_ONCE_MATCHER =
+      new CampQualifiedNameMatcher(INJECT_ONCE);
+
   static final DiagnosticType MESSAGE_INJECT_FIRST_ARGUMENT_IS_INVALID =
       DiagnosticType.error("JSC_MSG_RESOLVE_FIRST_ARGUMENT_IS_INVALID",
           "A first argument of " + INJECT + " is must be a constructor.");
@@ -34,16 +41,24 @@ public class FactoryInjectorInfoCollector {
 
   private FactoryInjectorInfo factoryInjectorInfo;
 
+  private CampMarkerFilter markerFilter;
+
 
-  public FactoryInjectorInfoCollector(AbstractCompiler compiler,
+  public FactoryInjectorInfoCollector(CampContext context,
       FactoryInjectorInfo factoryInjectorInfo) {
-    this.compiler = compiler;
+    this.compiler = context.getCompiler();
     this.factoryInjectorInfo = factoryInjectorInfo;
+    this.markerFilter = context.getMarkerFilter();
   }
 
 
   /**
-   * Collect informations of constructors.
+   * Collect informations of constructors. The constructors, the inject calls
+   * and the alias candidates are collected in one traversal, and the aliases
+   * are resolved after all constructors are collected. The constructors and
+   * the aliases are collected only from the global scope, so the function
+   * bodies of the scripts that can not contain the inject calls are not
+   * traversed.
    * 
    * @param externRoot
    *          The extern file root node.
@@ -51,8 +66,12 @@ public class FactoryInjectorInfoCollector {
    *          The root node of main codes.
    */
   public void process(Node externRoot, Node root) {
-    NodeTraversal.traverse(compiler, root, new MarkerProcessCallback());
-    NodeTraversal.traverse(compiler, root, new InjectionAliasFinder());
+    MarkerProcessCallback callback = new MarkerProcessCallback();
+    NodeTraversal.traverse(compiler, root, callback);
+    InjectionAliasFinder aliasFinder = new InjectionAliasFinder();
+    for (Node aliasCandidate : callback.getAliasCandidates()) {
+      aliasFinder.check(aliasCandidate);
+    }
   }
 
 
@@ -146,25 +165,59 @@ public class FactoryInjectorInfoCollector {
    * @author aono_taketoshi
    * 
    */
-  private final class MarkerProcessCallback extends AbstractPostOrderCallback {
+  private final class MarkerProcessCallback implements Callback {
 
     private TypeMarkerProcessor typeMarkerProcessor = new TypeMarkerProcessor();
 
     private InjectMarkerProcessor injectMarkerProcessor = new InjectMarkerProcessor();
 
+    private List<Node> aliasCandidates = Lists.newArrayList();
+
+
+    /**
+     * Return the global assignments and variable statements in the order of
+     * the traversal.
+     * 
+     * @return The nodes which may alias the constructors.
+     */
+    public List<Node> getAliasCandidates() {
+      return this.aliasCandidates;
+    }
+
+
+    /**
+     * True if the current script can not contain the inject calls.
+     */
+    private boolean isMarkerFree = false;
+
+
+    @Override
+    public boolean shouldTraverse(NodeTraversal t, Node n, Node parent) {
+      if (n.isScript()) {
+        this.isMarkerFree = !markerFilter.mayContainMarkers(n);
+        if (this.isMarkerFree) {
+          markerFilter.addInjectorSkip();
+        }
+      } else if (this.isMarkerFree && parent != null && parent.isFunction() && n.isBlock()) {
+        return false;
+      }
+      return true;
+    }
+
 
     @Override
     public void visit(NodeTraversal t, Node n, Node parent) {
+      if ((n.isAssign() || n.isVar()) && t.getScopeDepth() == 1) {
+        aliasCandidates.add(n);
+      }
+
       if (n.isCall()) {
         Node getprop = n.getFirstChild();
         if (getprop.isGetProp()) {
-          String qname = getprop.getQualifiedName();
-          if (qname != null) {
-            boolean isInject = qname.equals(INJECT);
-            boolean isInjectOnce = qname.equals(INJECT_ONCE);
-            if (isInject || isInjectOnce) {
-              injectMarkerProcessor.process(t, n, parent, isInjectOnce);
-            }
+          boolean isInject = INJECT_MATCHER.matches(getprop);
+          boolean isInjectOnce = !isInject && INJECT_ONCE_MATCHER.matches(getprop);
+          if (isInject || isInjectOnce) {
+            injectMarkerProcessor.process(t, n, parent, isInjectOnce);
           }
         }
       } else if (n.isFunction() && t.getScopeDepth() == 1) {
@@ -178,23 +231,26 @@ public class FactoryInjectorInfoCollector {
 
 
   /**
-   * Visitor implementations to find aliased types.
+   * Find aliased types from the global assignments and variable statements.
    * 
    * @author aono_taketoshi
    * 
    */
-  private final class InjectionAliasFinder extends AbstractPostOrderCallback {
-    @Override
-    public void visit(NodeTraversal t, Node n, Node parent) {
-      if (t.getScopeDepth() == 1) {
-        switch (n.getType()) {
-        case Token.ASSIGN:
-          this.checkAssignment(t, n);
-          break;
-
-        case Token.VAR:
-          this.checkVar(t, n);
-        }
+  private final class InjectionAliasFinder {
+    /**
+     * Check whether the node aliases the type or not.
+     * 
+     * @param n
+     *          The ASSIGN or VAR node in the global scope.
+     */
+    public void check(Node n) {
+      switch (n.getType()) {
+      case Token.ASSIGN:
+        this.checkAssignment(n);
+        break;
+
+      case Token.VAR:
+        this.checkVar(n);
       }
     }
 
@@ -202,25 +258,21 @@ public class FactoryInjectorInfoCollector {
     /**
      * Inspect assignment expression to check whether type is aliased or not.
      * 
-     * @param t
-     *          Current NodeTraversal.
      * @param n
      *          A target node.
      */
-    private void checkAssignment(NodeTraversal t, Node n) {
-      if (t.getScopeDepth() == 1) {
-        Node child = n.getFirstChild();
-        String qualifiedName = child.getQualifiedName();
-
-        if (qualifiedName != null) {
-
-          Node rvalue = child.getNext();
-          if (NodeUtil.isGet(rvalue) || rvalue.isName()) {
-            String name = rvalue.getQualifiedName();
-            List<TypeInfo> info = factoryInjectorInfo.getTypeInfoMap().get(name);
-            if (info.size() > 0) {
-              this.createAliasTypeInfoFrom(n, info, name, qualifiedName);
-            }
+    private void checkAssignment(Node n) {
+      Node child = n.getFirstChild();
+      String qualifiedName = child.getQualifiedName();
+
+      if (qualifiedName != null) {
+
+        Node rvalue = child.getNext();
+        if (NodeUtil.isGet(rvalue) || rvalue.isName()) {
+          String name = rvalue.getQualifiedName();
+          List<TypeInfo> info = factoryInjectorInfo.getTypeInfoMap().get(name);
+          if (info.size() > 0) {
+            this.createAliasTypeInfoFrom(n, info, name, qualifiedName);
           }
         }
       }
@@ -230,21 +282,17 @@ public class FactoryInjectorInfoCollector {
     /**
      * Inspect variable statement to check whether type is aliased or not.
      * 
-     * @param t
-     *          Current NodeTraversal.
      * @param n
      *          A target node.
      */
-    private void checkVar(NodeTraversal t, Node n) {
-      if (t.getScopeDepth() == 1) {
-        Node nameNode = n.getFirstChild();
-        Node rvalue = nameNode.getFirstChild();
-        if (rvalue != null && (rvalue.isName() || NodeUtil.isGet(rvalue))) {
-          String name = rvalue.getQualifiedName();
-          List<TypeInfo> info = factoryInjectorInfo.getTypeInfoMap().get(name);
-          if (info.size() > 0) {
-            createAliasTypeInfoFrom(n, info, name, nameNode.getString());
-          }
+    private void checkVar(Node n) {
+      Node nameNode = n.getFirstChild();
+      Node rvalue = nameNode.getFirstChild();
+      if (rvalue != null && (rvalue.isName() || NodeUtil.isGet(rvalue))) {
+        String name = rvalue.getQualifiedName();
+        List<TypeInfo> info = factoryInjectorInfo.getTypeInfoMap().get(name);
+        if (info.size() > 0) {
+          createAliasTypeInfoFrom(n, info, name, nameNode.getString());
         }
       }
     }
@@ -1,11 +1,11 @@
 package com.google.javascript.jscomp;
 
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 import com.google.javascript.jscomp.FactoryInjectorInfo.InjectInfo;
 import com.google.javascript.jscomp.FactoryInjectorInfo.TypeInfo;
 import com.google.javascript.rhino.IR;
@@ -51,34 +51,63 @@ public class FactoryInjectorProcessor implements HotSwapCompilerPass {
 
   private static String BINDINGS = "bindings";
 
-  private long instanceId = 0;
-
   private AbstractCompiler compiler;
 
+  private CampContext context;
+
   private FactoryInjectorInfo factoryInjectorInfo;
 
   private CodingConvention convention;
 
-  private Set<TypeInfo> insertedTypeInfoSet = Sets.newHashSet();
-
 
   public FactoryInjectorProcessor(AbstractCompiler compiler) {
-    this.compiler = compiler;
+    this(new CampContext(compiler));
+  }
+
+
+  public FactoryInjectorProcessor(CampContext context) {
+    this.context = context;
+    this.compiler = context.getCompiler();
     this.convention = this.compiler.getCodingConvention();
-    this.factoryInjectorInfo = new FactoryInjectorInfo();
   }
 
 
+  /**
+   * Collect and rewrite only the swapped script. The constructors of the
+   * other scripts are looked up from the registry kept in the CampContext.
+   */
   @Override
   public void hotSwapScript(Node scriptRoot, Node originalRoot) {
-    compiler.process(this);
+    this.factoryInjectorInfo = context.getFactoryInjectorInfo();
+    if (this.factoryInjectorInfo == null) {
+      this.factoryInjectorInfo = new FactoryInjectorInfo();
+      context.setFactoryInjectorInfo(this.factoryInjectorInfo);
+    }
+
+    String sourceName = scriptRoot.getSourceFileName();
+    factoryInjectorInfo.removeScript(sourceName);
+    new FactoryInjectorInfoCollector(context, this.factoryInjectorInfo).process(null, scriptRoot);
+
+    Rewriter rewriter = new Rewriter();
+    rewriter.rewrite(factoryInjectorInfo.getInjectInfoList(sourceName));
+    factoryInjectorInfo.releaseInjectCalls();
+
+    // The constructors of the script may be injected by the other scripts.
+    for (TypeInfo typeInfo : factoryInjectorInfo.getTypeInfoList(sourceName)) {
+      if (factoryInjectorInfo.isInjected(typeInfo.getName())) {
+        new FactoryInjector(typeInfo).process();
+      }
+    }
   }
 
 
   @Override
   public void process(Node externsRoot, Node root) {
-    new FactoryInjectorInfoCollector(compiler, this.factoryInjectorInfo).process(externsRoot, root);
-    new Rewriter().rewrite();
+    this.factoryInjectorInfo = new FactoryInjectorInfo();
+    context.setFactoryInjectorInfo(this.factoryInjectorInfo);
+    new FactoryInjectorInfoCollector(context, this.factoryInjectorInfo).process(externsRoot, root);
+    new Rewriter().rewrite(factoryInjectorInfo.getInjectInfoList());
+    factoryInjectorInfo.releaseInjectCalls();
   }
 
 
@@ -107,12 +136,6 @@ public class FactoryInjectorProcessor implements HotSwapCompilerPass {
      * Insert a static factory method to the constructors.
      */
     public void process() {
-      if (insertedTypeInfoSet.contains(constructorInfo)) {
-        return;
-      }
-
-      insertedTypeInfoSet.add(constructorInfo);
-
       // If constructor is already has factory method,
       // skip processes.
       if (constructorInfo.hasInstanceFactory()) {
@@ -127,7 +150,7 @@ public class FactoryInjectorProcessor implements HotSwapCompilerPass {
 
       if (constructorNode != null) {
         insertFactory(constructorNode);
-        compiler.reportCodeChange();
+        context.reportCodeChange();
       }
     }
 
@@ -280,16 +303,45 @@ public class FactoryInjectorProcessor implements HotSwapCompilerPass {
    * 
    */
   private final class Rewriter {
+    /**
+     * The number of the instance slots of each script.
+     */
+    private Map<String, Integer> instanceSlotCountMap = Maps.newHashMap();
+
+
     /**
      * Do rewrite.
+     * 
+     * @param injectInfoList
+     *          The dependency injection information to rewrite.
      */
-    public void rewrite() {
-      for (InjectInfo injectInfo : factoryInjectorInfo.getInjectInfoList()) {
+    public void rewrite(List<InjectInfo> injectInfoList) {
+      for (InjectInfo injectInfo : injectInfoList) {
         createInlineBindingInjector(injectInfo);
       }
     }
 
 
+    /**
+     * Create the instance slot name that is unique in the program. The name
+     * is made from the script id and the order in the script, so the name is
+     * not changed by the hot swap of the other scripts.
+     * 
+     * @param injectInfo
+     *          Current dependency injection information.
+     * @return The instance slot name.
+     */
+    private String createInstanceSlotName(InjectInfo injectInfo) {
+      String sourceName = injectInfo.getSourceFileName();
+      Integer count = instanceSlotCountMap.get(sourceName);
+      if (count == null) {
+        count = 0;
+      }
+      instanceSlotCountMap.put(sourceName, count + 1);
+      return INSTANCE_VAR + factoryInjectorInfo.getScriptId(sourceName) + "_" + count;
+    }
+
+
     /**
      * Inject a static factory method to the constructors.
      * 
@@ -320,8 +372,8 @@ public class FactoryInjectorProcessor implements HotSwapCompilerPass {
           Node getprop = NodeUtil.newQualifiedNameNode(convention, name + "." + FACTORY_NAME);
           Node call = NodeUtil.newCallNode(getprop, inject.cloneTree());
           if (injectInfo.isInjectOnce()) {
-            Node instanceVar = IR.getprop(inject.cloneTree(), IR.string(INSTANCE_VAR + instanceId));
-            instanceId++;
+            Node instanceVar = IR.getprop(inject.cloneTree(),
+                IR.string(createInstanceSlotName(injectInfo)));
             Node assign = IR.assign(instanceVar.cloneTree(), call);
             Node or = IR.or(instanceVar, assign);
             call = or;
@@ -0,0 +1,120 @@
+package com.google.javascript.jscomp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+public class CampCompileServerTest extends TestCase {
+
+  private File directory;
+
+  private File tokenFile;
+
+  private CampCompileServer server;
+
+  private Thread serverThread;
+
+
+  @Override
+  protected void setUp() throws IOException {
+    directory = Files.createTempDir();
+    tokenFile = new File(directory, "token");
+    server = new CampCompileServer(0, tokenFile);
+    serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          server.serve();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    serverThread.start();
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (serverThread.isAlive()) {
+      execute(new CampCompileClient(server.getPort(), tokenFile),
+          CampCompileServer.SHUTDOWN_FLAG);
+      serverThread.join();
+    }
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+
+  private static int execute(CampCompileClient client, String... args) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    return client.execute(args, new PrintStream(out, true), new PrintStream(err, true));
+  }
+
+
+  public void testTokenFileIsPrivate() throws IOException {
+    assertTrue(tokenFile.isFile());
+    try {
+      Set<PosixFilePermission> permissions = java.nio.file.Files.getPosixFilePermissions(
+          tokenFile.toPath());
+      assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+          permissions);
+    } catch (UnsupportedOperationException e) {
+      // The file system does not support the posix permissions.
+    }
+  }
+
+
+  public void testInvalidTokenIsRejected() throws Exception {
+    File otherToken = new File(directory, "other");
+    Files.write("guessed", otherToken, Charsets.UTF_8);
+    CampCompileClient client = new CampCompileClient(server.getPort(), otherToken);
+    assertEquals(-1, execute(client, CampCompileServer.SHUTDOWN_FLAG));
+    assertTrue(serverThread.isAlive());
+  }
+
+
+  public void testBrokenRequestDoesNotStopServer() throws Exception {
+    Socket socket = new Socket(InetAddress.getByName(null), server.getPort());
+    try {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeUTF(CampCompileServer.readToken(tokenFile));
+      out.writeUTF(directory.getAbsolutePath());
+      out.writeInt(-1);
+      out.flush();
+      // The daemon closes the connection without the response.
+      assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+    } finally {
+      socket.close();
+    }
+
+    File input = new File(directory, "input.js");
+    Files.write("var x = 1;", input, Charsets.UTF_8);
+    CampCompileClient client = new CampCompileClient(server.getPort(), tokenFile);
+    assertEquals(0, execute(client, "--js", input.getAbsolutePath()));
+  }
+
+
+  public void testShutdownRemovesTokenFile() throws Exception {
+    CampCompileClient client = new CampCompileClient(server.getPort(), tokenFile);
+    assertEquals(0, execute(client, CampCompileServer.SHUTDOWN_FLAG));
+    serverThread.join();
+    assertFalse(tokenFile.exists());
+  }
+}
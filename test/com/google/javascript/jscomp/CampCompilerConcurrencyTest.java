@@ -0,0 +1,170 @@
+package com.google.javascript.jscomp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+public class CampCompilerConcurrencyTest extends TestCase {
+
+  private static final int COMPILATIONS = 64;
+
+  private static final int THREADS = 8;
+
+
+  private static final class Compilation {
+    private final int index;
+
+    private final CampCompiler compiler;
+
+    private final Result result;
+
+
+    public Compilation(int index, CampCompiler compiler, Result result) {
+      this.index = index;
+      this.compiler = compiler;
+      this.result = result;
+    }
+  }
+
+
+  private static boolean isBroken(int index) {
+    return index % 3 == 0;
+  }
+
+
+  private static String source(int index) {
+    if (isBroken(index)) {
+      // camp.using outside of camp.module.
+      return "camp.using('test.m" + index + ".Using');";
+    }
+    return "camp.module('test.m" + index + "', ['Foo'], function(exports) {"
+        + "exports.Foo = function(){};"
+        + "});";
+  }
+
+
+  private static Compilation compile(int index) {
+    CampCompiler compiler = new CampCompiler(System.err);
+    CompilerOptions options = new CompilerOptions();
+    options.setCheckSuspiciousCode(true);
+    compiler.disableThreads();
+    Result result = compiler.compile(
+        ImmutableList.of(SourceFile.fromCode("externs", "var window;")),
+        ImmutableList.of(SourceFile.fromCode("input" + index, source(index))),
+        options);
+    return new Compilation(index, compiler, result);
+  }
+
+
+  public void testParallelCompilationsHaveIsolatedDiagnostics() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Future<Compilation>> futures = Lists.newArrayList();
+    try {
+      for (int i = 0; i < COMPILATIONS; i++) {
+        final int index = i;
+        futures.add(executor.submit(new Callable<Compilation>() {
+          @Override
+          public Compilation call() {
+            return compile(index);
+          }
+        }));
+      }
+
+      for (Future<Compilation> future : futures) {
+        Compilation compilation = future.get();
+        int index = compilation.index;
+        if (isBroken(index)) {
+          assertEquals(1, compilation.result.errors.length);
+          JSError error = compilation.result.errors[0];
+          assertEquals(CampModuleInfoCollector.MESSAGE_INVALID_USE_OF_USING, error.getType());
+          assertEquals("input" + index, error.sourceName);
+        } else {
+          assertEquals(0, compilation.result.errors.length);
+          assertTrue(compilation.compiler.toSource().contains("test.m" + index + ".Foo"));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  private static int count(String text, String pattern) {
+    int count = 0;
+    for (int index = text.indexOf(pattern); index != -1;
+        index = text.indexOf(pattern, index + pattern.length())) {
+      count++;
+    }
+    return count;
+  }
+
+
+  public void testBatchTargetsHaveOwnWarningGuards() throws IOException {
+    String[] guards = {"--jscomp_error", "--jscomp_warning", "--jscomp_off"};
+    int targets = guards.length * 3;
+    File directory = Files.createTempDir();
+    try {
+      File input = new File(directory, "input.js");
+      Files.write("undeclaredName = 1;", input, Charsets.UTF_8);
+      List<String> flagFiles = Lists.newArrayList();
+      for (int i = 0; i < targets; i++) {
+        File flagFile = new File(directory, "target" + i + ".flags");
+        Files.write(guards[i % guards.length] + " undefinedVars --js " + input.getPath(),
+            flagFile, Charsets.UTF_8);
+        flagFiles.add(flagFile.getPath());
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      CampCommandLineRunner.runBatch(flagFiles, new PrintStream(out, true),
+          new PrintStream(err, true));
+
+      String diagnostics = err.toString("UTF-8");
+      assertEquals(diagnostics, 3,
+          count(diagnostics, "ERROR - variable undeclaredName is undeclared"));
+      assertEquals(diagnostics, 3,
+          count(diagnostics, "WARNING - variable undeclaredName is undeclared"));
+    } finally {
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+
+  public void testRelativePathsAreResolvedAgainstWorkingDirectory() throws IOException {
+    File directory = Files.createTempDir();
+    try {
+      Files.write("var relativeInput = 1;", new File(directory, "input.js"), Charsets.UTF_8);
+      String[] args = {"--js", "input.js", "--js_output_file", "output.js"};
+
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      int status = new CampCommandLineRunner(args, System.out, new PrintStream(err, true),
+          new CampInputCache(null), null, directory).compile();
+
+      assertEquals(err.toString("UTF-8"), 0, status);
+      File output = new File(directory, "output.js");
+      assertTrue(output.isFile());
+      assertTrue(Files.toString(output, Charsets.UTF_8).contains("relativeInput"));
+    } finally {
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.google.javascript.jscomp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.google.javascript.rhino.Node;
+
+import junit.framework.TestCase;
+
+public class CampExternsSnapshotTest extends TestCase {
+
+  private static final String EXTERN_NAME = CampExternsSnapshot.DEFAULT_EXTERNS_PREFIX
+      + "camp_test.js";
+
+  private static final String EXTERN_CODE = "/** @constructor */ function CampTest() {}";
+
+  private File file;
+
+
+  @Override
+  protected void setUp() throws IOException {
+    file = File.createTempFile("camp-externs", ".snapshot");
+    file.delete();
+  }
+
+
+  @Override
+  protected void tearDown() {
+    file.delete();
+  }
+
+
+  private Node getExternRoot(CampInputCache cache) {
+    return cache.getExternRoot(SourceFile.fromCode(EXTERN_NAME, EXTERN_CODE),
+        new CompilerOptions());
+  }
+
+
+  public void testSnapshotIsWrittenAndRestored() {
+    CampInputCache cache = new CampInputCache(new CampExternsSnapshot(file));
+    Node parsed = getExternRoot(cache);
+    assertNotNull(parsed);
+    cache.saveSnapshot();
+    assertTrue(file.isFile());
+
+    Map<String, CampInputCache.ExternTemplate> templates = new CampExternsSnapshot(file).load();
+    assertNotNull(templates);
+    assertEquals(1, templates.size());
+
+    Node restored = getExternRoot(new CampInputCache(new CampExternsSnapshot(file)));
+    assertNotNull(restored);
+    assertNull(parsed.checkTreeEquals(restored));
+  }
+
+
+  public void testStaleSnapshotIsIgnored() throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("stale".getBytes("UTF-8"));
+    out.close();
+
+    assertNull(new CampExternsSnapshot(file).load());
+
+    CampInputCache cache = new CampInputCache(new CampExternsSnapshot(file));
+    assertNotNull(getExternRoot(cache));
+    cache.saveSnapshot();
+    assertNotNull(new CampExternsSnapshot(file).load());
+  }
+
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public void testUnexpectedClassIsNotRead() {
+    Map templates = Maps.newHashMap();
+    templates.put(EXTERN_NAME, new Date());
+    new CampExternsSnapshot(file).save(templates);
+    assertTrue(file.isFile());
+
+    assertNull(new CampExternsSnapshot(file).load());
+    assertFalse(CampObjectInputStream.isAllowed(Date.class.getName()));
+    assertFalse(CampObjectInputStream.isAllowed("[L" + Date.class.getName() + ";"));
+    assertTrue(CampObjectInputStream.isAllowed("[I"));
+    assertTrue(CampObjectInputStream.isAllowed("com.google.javascript.rhino.Node$StringNode"));
+  }
+
+
+  public void testSnapshotIsDisabledByDefault() {
+    String property = System.getProperty(CampExternsSnapshot.SNAPSHOT_PROPERTY);
+    System.clearProperty(CampExternsSnapshot.SNAPSHOT_PROPERTY);
+    try {
+      assertNull(CampExternsSnapshot.createDefault());
+      System.setProperty(CampExternsSnapshot.SNAPSHOT_PROPERTY, file.getPath());
+      assertNotNull(CampExternsSnapshot.createDefault());
+    } finally {
+      if (property != null) {
+        System.setProperty(CampExternsSnapshot.SNAPSHOT_PROPERTY, property);
+      } else {
+        System.clearProperty(CampExternsSnapshot.SNAPSHOT_PROPERTY);
+      }
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package com.google.javascript.jscomp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.javascript.rhino.Node;
+
+import junit.framework.TestCase;
+
+public class CampModuleIndexTest extends TestCase {
+
+  private static final String MODULE_A = "camp.module('test.a', ['Foo'], function(exports) {"
+      + "  var Bar = camp.using('test.b.Bar');"
+      + "  /** @constructor */"
+      + "  function Local() {}"
+      + "  /** @constructor */"
+      + "  exports.Foo = function() { new Bar(); new Local(); };"
+      + "});";
+
+  private static final String MODULE_B = "camp.module('test.b', ['Bar'], function(exports) {"
+      + "  /** @constructor */"
+      + "  exports.Bar = function() {};"
+      + "});";
+
+  private File file;
+
+
+  @Override
+  protected void setUp() throws IOException {
+    file = File.createTempFile("camp-module", ".index");
+    file.delete();
+  }
+
+
+  @Override
+  protected void tearDown() {
+    for (File dataFile : getDataFiles()) {
+      dataFile.delete();
+    }
+    file.delete();
+  }
+
+
+  private List<File> getDataFiles() {
+    List<File> dataFiles = Lists.newArrayList();
+    for (File sibling : file.getParentFile().listFiles()) {
+      if (sibling.getName().startsWith(file.getName() + ".")) {
+        dataFiles.add(sibling);
+      }
+    }
+    return dataFiles;
+  }
+
+
+  private Result compile(CampModuleIndex index, String name, String code) {
+    return compile(index, null, name, code);
+  }
+
+
+  private Result compile(CampModuleIndex index, CampModuleCache moduleCache, String name,
+      String code) {
+    CampCompiler compiler = new CampCompiler(System.err);
+    compiler.getCampContext().setModuleIndex(index);
+    compiler.getCampContext().setModuleCache(moduleCache);
+    compiler.disableThreads();
+    return compiler.compile(
+        ImmutableList.of(SourceFile.fromCode("externs", "var window;")),
+        ImmutableList.of(SourceFile.fromCode(name, code)),
+        new CompilerOptions());
+  }
+
+
+  public void testIndexIsWrittenAndMapped() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    assertEquals(0, index.getModuleCount());
+    assertFalse(index.hasModule("test.a"));
+
+    compile(index, "a.js", MODULE_A);
+    assertTrue(file.isFile());
+    assertEquals(1, index.getModuleCount());
+
+    // The modules of the other compilations are kept.
+    compile(index, "b.js", MODULE_B);
+    assertEquals(2, index.getModuleCount());
+
+    CampModuleIndex mapped = new CampModuleIndex(file);
+    assertEquals(2, mapped.getModuleCount());
+    assertTrue(mapped.hasModule("test.a"));
+    assertTrue(mapped.hasModule("test.b"));
+    assertFalse(mapped.hasModule("test"));
+    assertFalse(mapped.hasModule("test.c"));
+
+    assertEquals(ImmutableList.of("test.a.Foo"), mapped.getExportedList("test.a"));
+    assertEquals(ImmutableList.of("test.b.Bar"), mapped.getUsingList("test.a"));
+    assertEquals(ImmutableMap.of("Bar", "test.b.Bar"), mapped.getAliasMap("test.a"));
+    assertTrue(mapped.getTypeNameList("test.a").contains("Local"));
+    assertEquals(ImmutableList.of("test.b.Bar"), mapped.getExportedList("test.b"));
+    assertTrue(mapped.getUsingList("test.b").isEmpty());
+    assertNull(mapped.getExportedList("test.c"));
+    assertNull(mapped.getAliasMap("test.c"));
+  }
+
+
+  public void testModuleIsReplaced() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "a.js", MODULE_A);
+    compile(index, "a.js", MODULE_A.replace("['Foo']", "['Foo', 'Baz']"));
+
+    assertEquals(1, index.getModuleCount());
+    assertEquals(ImmutableList.of("test.a.Foo", "test.a.Baz"), index.getExportedList("test.a"));
+  }
+
+
+  public void testRemovedModuleIsDropped() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "a.js", MODULE_A);
+    compile(index, "b.js", MODULE_B);
+
+    // The renamed module replaces the old module of the same source file.
+    compile(index, "a.js", MODULE_A.replace("'test.a'", "'test.c'"));
+    assertEquals(2, index.getModuleCount());
+    assertFalse(index.hasModule("test.a"));
+    assertTrue(index.hasModule("test.c"));
+
+    compile(index, "a.js", "var x = 1;");
+    assertEquals(1, index.getModuleCount());
+    assertFalse(index.hasModule("test.c"));
+    assertTrue(new CampModuleIndex(file).hasModule("test.b"));
+  }
+
+
+  public void testUnchangedModuleIsNotWritten() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "a.js", MODULE_A);
+    compile(index, "b.js", MODULE_B);
+    List<File> dataFiles = getDataFiles();
+
+    // The change of the function body does not change the record.
+    compile(index, "a.js", MODULE_A.replace("new Local();", "new Local(); new Local();"));
+    assertEquals(dataFiles, getDataFiles());
+
+    compile(index, "a.js", MODULE_A.replace("['Foo']", "['Foo', 'Baz']"));
+    assertFalse(dataFiles.equals(getDataFiles()));
+  }
+
+
+  public void testUsingNotExportedIsReported() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "b.js", MODULE_B);
+
+    Result result = compile(index, "a.js", MODULE_A);
+    assertEquals(0, result.warnings.length);
+
+    result = compile(index, "a.js", MODULE_A.replace("test.b.Bar", "test.b.Baz"));
+    assertEquals(1, result.warnings.length);
+    assertEquals(CampModuleProcessor.MESSAGE_USING_NOT_EXPORTED, result.warnings[0].getType());
+    assertEquals("a.js", result.warnings[0].sourceName);
+
+    // The modules of the same compilation are also checked.
+    CampCompiler compiler = new CampCompiler(System.err);
+    compiler.getCampContext().setModuleIndex(index);
+    compiler.disableThreads();
+    result = compiler.compile(
+        ImmutableList.of(SourceFile.fromCode("externs", "var window;")),
+        ImmutableList.of(SourceFile.fromCode("a.js", MODULE_A.replace("test.b.Bar", "test.c.Bar")),
+            SourceFile.fromCode("c.js", MODULE_B.replace("test.b", "test.c"))),
+        new CompilerOptions());
+    assertEquals(0, result.warnings.length);
+  }
+
+
+  public void testHotSwappedUsingIsChecked() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "b.js", MODULE_B);
+
+    Compiler compiler = new Compiler(System.err);
+    compiler.init(
+        ImmutableList.of(SourceFile.fromCode("externs", "var window;")),
+        ImmutableList.of(SourceFile.fromCode("a.js", MODULE_A)),
+        new CompilerOptions());
+    compiler.parseInputs();
+    CampContext context = new CampContext(compiler);
+    context.setModuleIndex(index);
+
+    // The module of the previous compilation is looked up from the index.
+    Node originalScript = compiler.getRoot().getLastChild().getFirstChild();
+    Node newScript = new CompilerInput(SourceFile.fromCode("a.js",
+        MODULE_A.replace("test.b.Bar", "test.b.Baz"))).getAstRoot(compiler);
+    compiler.getRoot().getLastChild().replaceChild(originalScript, newScript);
+    new CampModuleProcessor(context).hotSwapScript(newScript, originalScript);
+    assertEquals(1, compiler.getWarnings().length);
+    assertEquals(CampModuleProcessor.MESSAGE_USING_NOT_EXPORTED,
+        compiler.getWarnings()[0].getType());
+  }
+
+
+  public void testTransformInfoFallsBackToIndex() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "b.js", MODULE_B);
+
+    CampModuleTransformInfo info = new CampModuleTransformInfo();
+    assertNull(info.getExportedList("test.b"));
+    info.setModuleIndex(index);
+    assertEquals(ImmutableList.of("test.b.Bar"), info.getExportedList("test.b"));
+  }
+
+
+  public void testStaleIndexIsIgnored() throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("stale".getBytes("UTF-8"));
+    out.close();
+
+    CampModuleIndex index = new CampModuleIndex(file);
+    assertEquals(0, index.getModuleCount());
+    assertFalse(index.hasModule("test.a"));
+
+    compile(index, "a.js", MODULE_A);
+    assertEquals(1, new CampModuleIndex(file).getModuleCount());
+  }
+
+
+  public void testUpdateWritesNewDataFile() {
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, "a.js", MODULE_A);
+    List<File> first = getDataFiles();
+    assertEquals(1, first.size());
+
+    // The mapped data file is not replaced, and the old one is deleted.
+    CampModuleIndex mapped = new CampModuleIndex(file);
+    compile(index, "b.js", MODULE_B);
+    List<File> second = getDataFiles();
+    assertEquals(1, second.size());
+    assertFalse(first.get(0).equals(second.get(0)));
+    assertEquals(ImmutableList.of("test.a.Foo"), mapped.getExportedList("test.a"));
+    assertEquals(2, new CampModuleIndex(file).getModuleCount());
+  }
+
+
+  public void testRestoredScriptIsIndexed() {
+    CampModuleCache moduleCache = new CampModuleCache();
+    compile(null, moduleCache, "a.js", MODULE_A);
+
+    CampModuleIndex index = new CampModuleIndex(file);
+    compile(index, moduleCache, "a.js", MODULE_A);
+    assertEquals(ImmutableList.of("test.a.Foo"), index.getExportedList("test.a"));
+    assertEquals(ImmutableMap.of("Bar", "test.b.Bar"), index.getAliasMap("test.a"));
+  }
+
+
+  public void testFailureIsReported() throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.close();
+
+    // The parent of the index is not a directory.
+    CampModuleIndex index = new CampModuleIndex(new File(file, "index"));
+    Result result = compile(index, "a.js", MODULE_A);
+    assertEquals(1, result.warnings.length);
+    assertEquals(CampModuleProcessor.MESSAGE_MODULE_INDEX_NOT_WRITTEN,
+        result.warnings[0].getType());
+    assertEquals(0, index.getModuleCount());
+  }
+}
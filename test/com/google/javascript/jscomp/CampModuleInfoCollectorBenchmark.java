@@ -0,0 +1,114 @@
+package com.google.javascript.jscomp;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.javascript.rhino.Node;
+
+/**
+ * Measure the collection time of the CampModuleInfoCollector for the large
+ * module-heavy input. The input is parsed once, and only the collection is
+ * measured.
+ *
+ * <pre>
+ * CampModuleInfoCollectorBenchmark [modules] [iterations] [parallelism]
+ * </pre>
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampModuleInfoCollectorBenchmark {
+
+  private static final int DEFAULT_MODULES = 500;
+
+  private static final int DEFAULT_ITERATIONS = 30;
+
+  private static final int WARMUP_ITERATIONS = 10;
+
+
+  private CampModuleInfoCollectorBenchmark() {}
+
+
+  /**
+   * Create the source of a module.
+   *
+   * @param index
+   *          The index of the module.
+   * @return The module source.
+   */
+  static String createModule(int index) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("camp.module('bench.module" + index + "', ['Type', 'helper'],"
+        + " function(exports) {\n");
+    for (int i = 0; i < 5; i++) {
+      builder.append("  var Dep" + i + " = camp.using('bench.dep" + i + ".Dep');\n");
+    }
+    for (int i = 0; i < 10; i++) {
+      builder.append("  /**\n   * @constructor\n   * @param {Dep" + (i % 5) + "} dep\n"
+          + "   * @param {number} value\n   */\n"
+          + "  function Local" + i + "(dep, value) {\n"
+          + "    this.dep = dep;\n"
+          + "    this.value = value + counter;\n"
+          + "  }\n"
+          + "  /** @return {Local" + i + "} */\n"
+          + "  Local" + i + ".prototype.self = function() {\n"
+          + "    var result = this;\n"
+          + "    for (var j = 0; j < this.value; j++) {\n"
+          + "      result = result.dep ? result : new Local" + i + "(this.dep, j);\n"
+          + "    }\n"
+          + "    return result;\n"
+          + "  };\n");
+    }
+    builder.append("  var counter = 0;\n"
+        + "  /**\n   * @constructor\n   * @extends {Local0}\n   */\n"
+        + "  exports.Type = function() {\n"
+        + "    Local0.call(this, new Dep0(), counter++);\n"
+        + "  };\n"
+        + "  /** @param {exports.Type} type */\n"
+        + "  exports.helper = function(type) {\n"
+        + "    return type.self();\n"
+        + "  };\n"
+        + "  var AliasType = exports.Type;\n"
+        + "});\n");
+    return builder.toString();
+  }
+
+
+  public static void main(String[] args) {
+    int modules = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MODULES;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+    int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+    List<SourceFile> inputs = Lists.newArrayList();
+    for (int i = 0; i < modules; i++) {
+      inputs.add(SourceFile.fromCode("module" + i + ".js", createModule(i)));
+    }
+
+    Compiler compiler = new Compiler();
+    CompilerOptions options = new CompilerOptions();
+    compiler.init(Lists.newArrayList(SourceFile.fromCode("externs", "var camp;")), inputs,
+        options);
+    compiler.parseInputs();
+    Node root = compiler.getRoot().getLastChild();
+    CampContext context = new CampContext(compiler);
+    context.setParallelism(parallelism);
+
+    // The collector does not modify the tree, so the same tree is collected
+    // repeatedly.
+    List<Long> times = Lists.newArrayList();
+    for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+      long start = System.nanoTime();
+      new CampModuleInfoCollector(context, new CampModuleTransformInfo()).process(root);
+      long elapsed = System.nanoTime() - start;
+      if (i >= WARMUP_ITERATIONS) {
+        times.add(Long.valueOf(elapsed));
+      }
+    }
+
+    Collections.sort(times);
+    System.out.println(modules + " modules, " + parallelism + " threads: median "
+        + (times.get(times.size() / 2).longValue() / 1000) + "us, min "
+        + (times.get(0).longValue() / 1000) + "us");
+  }
+}
@@ -1,11 +1,13 @@
 package com.google.javascript.jscomp;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import com.google.common.collect.Lists;
+import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.JSTypeExpression;
 import com.google.javascript.rhino.Node;
@@ -329,6 +331,24 @@ public class CampModuleProcessorTest extends CompilerTestCase {
   }
 
 
+  public void testUsingAliasShadowed() {
+    test(
+        module(
+            null,
+            "var Using = camp.using('test.foo.Using');",
+            "Using.foo();",
+            "function f(Using) {return Using;}",
+            "f(Using);"
+        ),
+        code(
+            "goog.require('test.foo.Using');",
+            "test.foo.Using.foo();",
+            "function test_foo_bar_baz_0_f(Using) {return Using;}",
+            "test_foo_bar_baz_0_f(test.foo.Using);"
+        ));
+  }
+
+
   public void testUsingStatic2Level() {
     test(
         module(
@@ -985,6 +1005,342 @@ public class CampModuleProcessorTest extends CompilerTestCase {
   }
 
 
+  public void testHotSwapScript() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(
+            SourceFile.fromCode("a.js", "camp.module('test.a', ['A'], function(exports) {"
+                + "exports.A = function() {};});"),
+            SourceFile.fromCode("b.js", "camp.module('test.b', ['B'], function(exports) {"
+                + "var x = 1; exports.B = function() {return x;};});")),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+
+    // The ModuleInfo is released when the module is rewritten, and only the
+    // module ids are kept.
+    CampModuleTransformInfo campModuleTransformInfo = context.getCampModuleTransformInfo();
+    assertTrue(campModuleTransformInfo.getModuleInfoMap().isEmpty());
+    assertEquals(2, campModuleTransformInfo.getNextModuleId());
+    Node otherScript = root.getLastChild().getLastChild();
+    String otherCode = compiler.toSource(otherScript);
+
+    Node originalScript = root.getLastChild().getFirstChild();
+    Node newScript = new CompilerInput(SourceFile.fromCode("a.js",
+        "camp.module('test.a', ['C'], function(exports) {exports.C = function() {};});"))
+        .getAstRoot(compiler);
+    root.getLastChild().replaceChild(originalScript, newScript);
+    new CampModuleProcessor(context).hotSwapScript(newScript, originalScript);
+
+    assertEquals(
+        "goog.provide(\"test.a.C\");test.a.C=function(){}",
+        compiler.toSource(newScript));
+    assertTrue(campModuleTransformInfo.getModuleInfoMap().isEmpty());
+    assertEquals(3, campModuleTransformInfo.getNextModuleId());
+    assertEquals(otherCode, compiler.toSource(otherScript));
+  }
+
+
+  private String processWithCache(CampModuleCache moduleCache, String a, String b) {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(SourceFile.fromCode("a.js", a), SourceFile.fromCode("b.js", b)),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    context.setModuleCache(moduleCache);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+    return compiler.toSource(root.getLastChild());
+  }
+
+
+  public void testModuleCache() {
+    String a = "camp.module('test.a', ['A'], function(exports) {"
+        + "var x = 1; exports.A = function() {return x;};});";
+    String b = "camp.module('test.b', ['B'], function(exports) {"
+        + "var y = 1; exports.B = function() {return y;};});";
+    String modifiedB = b.replace("y = 1", "y = 2");
+
+    String expected = processWithCache(null, a, modifiedB);
+    CampModuleCache moduleCache = new CampModuleCache();
+    processWithCache(moduleCache, a, b);
+    assertEquals(expected, processWithCache(moduleCache, a, modifiedB));
+    assertEquals(expected, processWithCache(moduleCache, a, modifiedB));
+  }
+
+
+  /**
+   * Process the scripts with the cache, and return the reference of the
+   * program. The compiler is not referenced after this.
+   */
+  private WeakReference<Node> processWithCacheWeakly(CampModuleCache moduleCache,
+      String a, String b, String[] result) {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(SourceFile.fromCode("a.js", a), SourceFile.fromCode("b.js", b)),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    context.setModuleCache(moduleCache);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+    result[0] = compiler.toSource(root.getLastChild());
+    assertEquals(2, countTypeNodes(root.getLastChild()));
+    return new WeakReference<Node>(root);
+  }
+
+
+  /**
+   * Count the type expressions of the JSDocInfo in the tree.
+   */
+  private static int countTypeNodes(Node n) {
+    int count = 0;
+    JSDocInfo info = n.getJSDocInfo();
+    if (info != null) {
+      for (Node typeNode : info.getTypeNodes()) {
+        if (typeNode != null) {
+          count++;
+        }
+      }
+    }
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      count += countTypeNodes(child);
+    }
+    return count;
+  }
+
+
+  public void testModuleCacheReleasesPrograms() throws InterruptedException {
+    String a = "camp.module('test.a', ['A'], function(exports) {"
+        + "/** @constructor */ var Local = function() {};"
+        + "/** @return {Local} */ exports.A = function() {return new Local();};});";
+    String b = "camp.module('test.b', ['B'], function(exports) {"
+        + "/** @param {number} x */ exports.B = function(x) {};});";
+    String expected = processWithCache(null, a, b);
+
+    // The daemon and the watch mode keep the cache between the compilations.
+    CampModuleCache moduleCache = new CampModuleCache();
+    String[] result = new String[1];
+    WeakReference<Node> first = processWithCacheWeakly(moduleCache, a, b, result);
+    assertEquals(expected, result[0]);
+    assertTrue(isCollected(first));
+
+    // The restored trees refer nothing of the previous compilation.
+    WeakReference<Node> second = processWithCacheWeakly(moduleCache, a, b, result);
+    assertEquals(expected, result[0]);
+    assertTrue(isCollected(second));
+    assertEquals(expected, processWithCache(moduleCache, a, b));
+  }
+
+
+  public void testModuleDiskCache() throws Exception {
+    String a = "camp.module('test.a', ['A'], function(exports) {"
+        + "var x = 1; exports.A = function() {return x;};});";
+    String b = "camp.module('test.b', ['B'], function(exports) {"
+        + "/** @constructor */ var Local = function() {};"
+        + "exports.B = function() {return new Local();};});";
+    String expected = processWithCache(null, a, b);
+
+    File directory = File.createTempFile("camp-module-cache", "");
+    directory.delete();
+    try {
+      long day = 24 * 60 * 60 * 1000;
+      processWithCache(new CampModuleCache(new CampModuleDiskCache(directory, 1 << 20, day)),
+          a, b);
+      assertEquals(2, directory.listFiles().length);
+      for (File file : directory.listFiles()) {
+        file.setLastModified(System.currentTimeMillis() - 2 * day);
+      }
+
+      // The entries used by the compilation are not evicted.
+      CampModuleCache moduleCache =
+          new CampModuleCache(new CampModuleDiskCache(directory, 1 << 20, day));
+      assertEquals(expected, processWithCache(moduleCache, a, b));
+      moduleCache.evict();
+      assertEquals(2, directory.listFiles().length);
+
+      for (File file : directory.listFiles()) {
+        file.setLastModified(System.currentTimeMillis() - 2 * day);
+      }
+      moduleCache.evict();
+      assertEquals(0, directory.listFiles().length);
+    } finally {
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+
+  private String processWithParallelism(int parallelism, String... codes) {
+    List<SourceFile> inputs = Lists.newArrayList();
+    for (int i = 0; i < codes.length; i++) {
+      inputs.add(SourceFile.fromCode(i + ".js", codes[i]));
+    }
+    CompilerOptions options = getOptions();
+    options.checkSymbols = true;
+    Compiler compiler = new Compiler();
+    compiler.init(Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)), inputs, options);
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    context.setParallelism(parallelism);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+    return compiler.toSource(root.getLastChild()) + Arrays.toString(compiler.getErrors());
+  }
+
+
+  public void testParallelism() {
+    String[] codes = new String[12];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = "camp.module('test.m" + i + "', ['A'], function(exports) {"
+          + "var Dep = camp.using('test.m" + (i + 1) % codes.length + ".A');"
+          + "/** @constructor @param {Dep} dep */ function Local(dep) {}"
+          + "exports.A = function() {return new Local(new Dep());};});";
+    }
+    codes[3] = "var x = 1; var x = 2;" + codes[3];
+    codes[4] = codes[4].replace("exports.A =", "function f(arguments) {return arguments;} exports.A =");
+    codes[5] = "camp.using('test.m0.A');";
+    codes[8] = codes[8] + codes[8];
+
+    String expected = processWithParallelism(1, codes);
+    assertTrue(expected.contains(SyntacticScopeCreator.VAR_ARGUMENTS_SHADOWED_ERROR.key));
+    assertFalse(expected.contains(SyntacticScopeCreator.VAR_MULTIPLY_DECLARED_ERROR.key));
+    assertTrue(expected.contains(CampModuleInfoCollector.MESSAGE_INVALID_USE_OF_USING.key));
+    assertTrue(expected.contains(
+        CampModuleInfoCollector.MESSAGE_MODULE_ONLY_ALLOWED_ONCE_PER_FILE.key));
+    assertEquals(expected, processWithParallelism(4, codes));
+  }
+
+
+  public void testScriptLevelVarsAreNotResolvedInModule() {
+    String code = "var x = 1; var x = 2;" + module(null, "exports.foo = function() {return x;};");
+    for (int parallelism : new int[] {1, 2}) {
+      CompilerOptions options = getOptions();
+      options.checkSymbols = true;
+      Compiler compiler = new Compiler();
+      compiler.init(
+          Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+          Lists.newArrayList(SourceFile.fromCode("a.js", code),
+              SourceFile.fromCode("b.js", "camp.module('test.b', function(exports) {});")),
+          options);
+      compiler.parseInputs();
+      CampContext context = new CampContext(compiler);
+      context.setParallelism(parallelism);
+      CampModuleTransformInfo campModuleTransformInfo = new CampModuleTransformInfo();
+      new CampModuleInfoCollector(context, campModuleTransformInfo).process(
+          compiler.getRoot().getLastChild());
+
+      // The scopes of the module are rooted at the module, so the top level
+      // variables are neither checked nor renamed as the module variables.
+      assertEquals(0, compiler.getErrorCount());
+      assertNull(campModuleTransformInfo.getModuleInfo("a.js").getRenameTable());
+    }
+  }
+
+
+  public void testMarkerFilter() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(
+            SourceFile.fromCode("a.js", "var a = 1;"),
+            SourceFile.fromCode("b.js", "camp.module('test.b', ['B'], function(exports) {"
+                + "exports.B = function() {};});"),
+            SourceFile.fromCode("c.js", "\\u0063amp.using('test.b.B');")),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+
+    assertEquals(1, context.getMarkerFilter().getModuleSkipCount());
+    assertEquals("goog.provide(\"test.b.B\");test.b.B=function(){}",
+        compiler.toSource(root.getLastChild().getChildAtIndex(1)));
+    assertEquals(1, compiler.getErrorCount());
+  }
+
+
+  public void testTypeKindAfterRedeclaration() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(SourceFile.fromCode("a.js", module(null,
+            "var A = camp.using('test.foo.A');",
+            "/** @type {A} */ var a1 = null;",
+            "function A() {}",
+            "/** @type {A} */ var a2 = null;"))),
+        getOptions());
+    compiler.parseInputs();
+    CampModuleTransformInfo info = new CampModuleTransformInfo();
+    new CampModuleInfoCollector(new CampContext(compiler), info)
+        .process(compiler.getRoot().getLastChild());
+
+    ModuleInfo moduleInfo = info.getModuleInfoMap().values().iterator().next();
+    assertEquals(1, moduleInfo.getAliasTypeList().size());
+    assertEquals(1, moduleInfo.getLocalTypeList().size());
+  }
+
+
+  private static Node findCall(Node n, String qualifiedName) {
+    if (n.isCall() && qualifiedName.equals(n.getFirstChild().getQualifiedName())) {
+      return n;
+    }
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      Node call = findCall(child, qualifiedName);
+      if (call != null) {
+        return call;
+      }
+    }
+    return null;
+  }
+
+
+  private static boolean isCollected(WeakReference<?> reference) throws InterruptedException {
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    return reference.get() == null;
+  }
+
+
+  public void testMetadataReleased() throws InterruptedException {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(
+            SourceFile.fromCode("a.js", module(null,
+                "var Using = camp.using('test.foo.Using');",
+                "Using.foo();")),
+            SourceFile.fromCode("b.js", "/** @constructor */ function Foo(foo) {}"
+                + "camp.utils.dependencies.inject(Foo, window);")),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    WeakReference<Node> usingCall =
+        new WeakReference<Node>(findCall(root, CampModuleConsts.USING_CALL));
+    WeakReference<Node> injectCall =
+        new WeakReference<Node>(findCall(root, "camp.utils.dependencies.inject"));
+    CampContext context = new CampContext(compiler);
+    new CampModuleProcessor(context).process(root.getFirstChild(), root.getLastChild());
+    new FactoryInjectorProcessor(context).process(root.getFirstChild(), root.getLastChild());
+
+    // The rewritten calls are detached, and the context does not retain them.
+    assertTrue(isCollected(usingCall));
+    assertTrue(isCollected(injectCall));
+    assertTrue(context.getCampModuleTransformInfo().getModuleInfoMap().isEmpty());
+    assertEquals(1, context.getFactoryInjectorInfo().getTypeInfoMap().size());
+  }
+
+
   @Override
   protected CampModuleProcessor getProcessor(Compiler compiler) {
     return new CampModuleProcessor(compiler);
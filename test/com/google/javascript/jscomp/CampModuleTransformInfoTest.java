@@ -0,0 +1,142 @@
+package com.google.javascript.jscomp;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.javascript.jscomp.CampModuleTransformInfo.ModuleInfo;
+import com.google.javascript.jscomp.CampModuleTransformInfo.RenameTable;
+import com.google.javascript.rhino.Node;
+import com.google.javascript.rhino.Token;
+
+import junit.framework.TestCase;
+
+public class CampModuleTransformInfoTest extends TestCase {
+
+  /**
+   * The collections of the ModuleInfo that a small module fills.
+   */
+  private static final Set<String> FILLED_COLLECTIONS =
+      ImmutableSet.of("usingCallList", "renamedVarSet");
+
+
+  /**
+   * Create the ModuleInfo of a small module, that has a 'camp.using' call and
+   * a module local variable.
+   */
+  private static ModuleInfo createSmallModule(CampModuleTransformInfo info,
+      Node callNode, Node nra, Node usingCall, Node localName) {
+    ModuleInfo moduleInfo = info.createModuleInfo("test.module", "test_module", callNode, nra);
+    moduleInfo.addUsingCall(usingCall);
+    moduleInfo.addRenamedVar("Local");
+    moduleInfo.addRenameVarBaseDeclaration(localName);
+    moduleInfo.addRenameTarget(localName, localName);
+    return moduleInfo;
+  }
+
+
+  public void testUnusedCollectionsAreNotAllocated() throws IllegalAccessException {
+    Node callNode = new Node(Token.CALL);
+    Node nra = Node.newString(Token.NAME, "exports");
+    Node usingCall = new Node(Token.CALL);
+    Node localName = Node.newString(Token.NAME, "Local");
+    CampModuleTransformInfo info = new CampModuleTransformInfo();
+    ModuleInfo moduleInfo = createSmallModule(info, callNode, nra, usingCall, localName);
+
+    int collectionCount = 0;
+    for (Field field : ModuleInfo.class.getDeclaredFields()) {
+      Class<?> type = field.getType();
+      if (!Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type)
+          && !Multimap.class.isAssignableFrom(type)) {
+        continue;
+      }
+      field.setAccessible(true);
+      if (FILLED_COLLECTIONS.contains(field.getName())) {
+        assertNotNull(field.getName(), field.get(moduleInfo));
+      } else {
+        assertNull(field.getName() + " is allocated", field.get(moduleInfo));
+      }
+      collectionCount++;
+    }
+    assertTrue(collectionCount > FILLED_COLLECTIONS.size());
+
+    // The empty collections are shared by all modules.
+    ModuleInfo emptyModule = info.createModuleInfo("test.empty", "test_empty",
+        new Node(Token.CALL), Node.newString(Token.NAME, "exports"));
+    assertSame(moduleInfo.getExportsSet(), emptyModule.getExportsSet());
+    assertSame(moduleInfo.getAliasTypeList(), emptyModule.getAliasTypeList());
+    assertSame(moduleInfo.getAliasVarList("Local"), emptyModule.getAliasVarList("Local"));
+    assertSame(emptyModule.getUsingCallList(), new CampModuleTransformInfo()
+        .createModuleInfo("test.other", "test_other", new Node(Token.CALL),
+            Node.newString(Token.NAME, "exports")).getUsingCallList());
+
+    assertEquals(1, moduleInfo.getUsingCallList().size());
+    assertTrue(moduleInfo.getExportsSet().isEmpty());
+    assertTrue(moduleInfo.getAliasTypeList().isEmpty());
+    assertTrue(moduleInfo.getAliasVarList("Local").isEmpty());
+    assertFalse(moduleInfo.isForbiddenAlias("Local"));
+    assertTrue(moduleInfo.isRenameVarBaseDeclaration(localName));
+  }
+
+
+  public void testRenameTable() {
+    CampModuleTransformInfo info = new CampModuleTransformInfo();
+    ModuleInfo moduleInfo = info.createModuleInfo("test.module", "test_module",
+        new Node(Token.CALL), Node.newString(Token.NAME, "exports"));
+    assertNull(moduleInfo.getRenameTable());
+
+    int count = 20;
+    Node[] declarations = new Node[count];
+    for (int i = 0; i < count; i++) {
+      declarations[i] = Node.newString(Token.NAME, "Local" + i);
+      // The references may be found before the declaration.
+      moduleInfo.addRenameTarget(declarations[i], Node.newString(Token.NAME, "Local" + i));
+      if (i % 2 == 0) {
+        moduleInfo.addRenameVarBaseDeclaration(declarations[i]);
+      }
+      moduleInfo.addRenameTarget(declarations[i], declarations[i]);
+    }
+
+    RenameTable renameTable = moduleInfo.getRenameTable();
+    assertEquals(count, renameTable.getDeclarationCount());
+    assertEquals(count * 2, renameTable.getTargetCount());
+    for (int i = 0; i < count; i++) {
+      assertSame(declarations[i], renameTable.getDeclaration(i));
+      assertEquals(i % 2 == 0, renameTable.isBaseDeclaration(i));
+      assertEquals(i % 2 == 0, moduleInfo.isRenameVarBaseDeclaration(declarations[i]));
+      assertEquals(i, renameTable.getTargetDeclaration(i * 2));
+      assertEquals(i, renameTable.getTargetDeclaration(i * 2 + 1));
+      assertSame(declarations[i], renameTable.getTarget(i * 2 + 1));
+    }
+  }
+
+
+  public void testRenamedNamesShared() {
+    CampModuleTransformInfo info = new CampModuleTransformInfo();
+    String moduleId = info.getNameTable().getModuleId("test.module");
+    assertEquals("test_module", moduleId);
+    assertSame(moduleId, info.getNameTable().getModuleId("test.module"));
+
+    ModuleInfo moduleInfo = info.createModuleInfo("test.module", moduleId,
+        new Node(Token.CALL), Node.newString(Token.NAME, "exports"));
+    moduleInfo.addRenamedVar("Local");
+    String renamed = moduleInfo.getRenamedVar("Local");
+    assertEquals("test_module_0_Local", renamed);
+    assertSame(renamed, moduleInfo.getRenamedName("Local"));
+    assertEquals("test_module_0_Local.Type", moduleInfo.getRenamedName("Local.Type"));
+    assertNull(moduleInfo.getRenamedVar("Other"));
+
+    // The ModuleInfo collected by the parallel collection is renumbered.
+    CampModuleTransformInfo adoptingInfo = new CampModuleTransformInfo(info.getNameTable());
+    adoptingInfo.createModuleInfo("other.module", "other_module",
+        new Node(Token.CALL), Node.newString(Token.NAME, "exports"));
+    adoptingInfo.adoptModuleInfo("test.js", moduleInfo);
+    assertEquals("test_module_1", moduleInfo.getModuleId());
+    assertEquals("test_module_1_Local", moduleInfo.getRenamedVar("Local"));
+    assertSame(moduleInfo.getRenamedVar("Local"),
+        info.getNameTable().getRenamedName("test_module_1", "Local"));
+  }
+}
@@ -0,0 +1,131 @@
+package com.google.javascript.jscomp;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.javascript.rhino.Node;
+
+/**
+ * Measure the garbage created by the recognition of the camp markers. The
+ * GETPROP nodes of the module-heavy input, that are not the markers, are
+ * recognized by {@link Node#getQualifiedName()} and by the
+ * CampQualifiedNameMatcher, and the allocated bytes per node are printed.
+ * The allocated bytes per node of the CampModuleInfoCollector are also
+ * printed.
+ *
+ * <pre>
+ * CampQualifiedNameMatcherBenchmark [modules] [iterations]
+ * </pre>
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampQualifiedNameMatcherBenchmark {
+
+  private static final int DEFAULT_MODULES = 200;
+
+  private static final int DEFAULT_ITERATIONS = 20;
+
+  private static int matched = 0;
+
+
+  private CampQualifiedNameMatcherBenchmark() {}
+
+
+  private static void collectNonMarkers(Node n, List<Node> nodes) {
+    if (n.isGetProp() && !CampModuleConsts.CAMP_MODULE_CALL_MATCHER.matches(n)
+        && !CampModuleConsts.USING_CALL_MATCHER.matches(n)) {
+      nodes.add(n);
+    }
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      collectNonMarkers(child, nodes);
+    }
+  }
+
+
+  private static int countNodes(Node n) {
+    int count = 1;
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+
+
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+
+  private static void recognizeByQualifiedName(List<Node> nodes) {
+    for (int i = 0; i < nodes.size(); i++) {
+      String qualifiedName = nodes.get(i).getQualifiedName();
+      if (qualifiedName != null && (qualifiedName.equals(CampModuleConsts.CAMP_MODULE_CALL)
+          || qualifiedName.equals(CampModuleConsts.USING_CALL))) {
+        matched++;
+      }
+    }
+  }
+
+
+  private static void recognizeByMatcher(List<Node> nodes) {
+    for (int i = 0; i < nodes.size(); i++) {
+      Node n = nodes.get(i);
+      if (CampModuleConsts.CAMP_MODULE_CALL_MATCHER.matches(n)
+          || CampModuleConsts.USING_CALL_MATCHER.matches(n)) {
+        matched++;
+      }
+    }
+  }
+
+
+  public static void main(String[] args) {
+    int modules = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MODULES;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+    List<SourceFile> inputs = Lists.newArrayList();
+    for (int i = 0; i < modules; i++) {
+      inputs.add(SourceFile.fromCode("module" + i + ".js",
+          CampModuleInfoCollectorBenchmark.createModule(i)));
+    }
+    Compiler compiler = new Compiler();
+    compiler.init(Lists.newArrayList(SourceFile.fromCode("externs", "var camp;")), inputs,
+        new CompilerOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot().getLastChild();
+    List<Node> nodes = Lists.newArrayList();
+    collectNonMarkers(root, nodes);
+    int nodeCount = countNodes(root);
+
+    long qualifiedNameBytes = 0;
+    long matcherBytes = 0;
+    long collectorBytes = 0;
+    CampContext context = new CampContext(compiler);
+    for (int i = 0; i < iterations * 2; i++) {
+      long start = getAllocatedBytes();
+      recognizeByQualifiedName(nodes);
+      long middle = getAllocatedBytes();
+      recognizeByMatcher(nodes);
+      long end = getAllocatedBytes();
+      new CampModuleInfoCollector(context, new CampModuleTransformInfo()).process(root);
+      long collected = getAllocatedBytes();
+      // The first half is the warmup.
+      if (i >= iterations) {
+        qualifiedNameBytes += middle - start;
+        matcherBytes += end - middle;
+        collectorBytes += collected - end;
+      }
+    }
+
+    System.out.println(nodes.size() + " non-marker GETPROP nodes, " + matched + " matched");
+    System.out.println("getQualifiedName: "
+        + ((double) qualifiedNameBytes / iterations / nodes.size()) + " bytes/node");
+    System.out.println("matcher: "
+        + ((double) matcherBytes / iterations / nodes.size()) + " bytes/node");
+    System.out.println("collector: "
+        + ((double) collectorBytes / iterations / nodeCount) + " bytes/node of "
+        + nodeCount + " nodes");
+  }
+}
@@ -0,0 +1,86 @@
+package com.google.javascript.jscomp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measure the cold start time of the camp compiler jar with and without the
+ * class-data-sharing archive. This is run from the 'camp-cds-benchmark' target.
+ *
+ * <pre>
+ * CampStartupBenchmark compiler.jar compiler.jsa iterations [compiler arguments...]
+ * </pre>
+ *
+ * @author aono_taketoshi
+ *
+ */
+public final class CampStartupBenchmark {
+
+  private CampStartupBenchmark() {}
+
+
+  /**
+   * Launch the compiler in a fresh jvm and return the elapsed time.
+   *
+   * @param jvmArgs
+   *          The jvm arguments.
+   * @param jar
+   *          The compiler jar.
+   * @param compilerArgs
+   *          The compiler arguments.
+   * @return The elapsed milliseconds.
+   */
+  private static long launch(List<String> jvmArgs, String jar, List<String> compilerArgs)
+      throws IOException, InterruptedException {
+    List<String> command = Lists.newArrayList();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    command.addAll(jvmArgs);
+    command.add("-jar");
+    command.add(jar);
+    command.addAll(compilerArgs);
+
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectErrorStream(true);
+    builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(jar + ".benchmark.log")));
+
+    long start = System.nanoTime();
+    builder.start().waitFor();
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+
+  /**
+   * Run the compiler some times and return the median elapsed time.
+   */
+  private static long median(List<String> jvmArgs, String jar, List<String> compilerArgs,
+      int iterations) throws IOException, InterruptedException {
+    List<Long> times = Lists.newArrayList();
+    for (int i = 0; i < iterations; i++) {
+      times.add(launch(jvmArgs, jar, compilerArgs));
+    }
+    Collections.sort(times);
+    return times.get(times.size() / 2);
+  }
+
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    String jar = args[0];
+    String archive = args[1];
+    int iterations = Integer.parseInt(args[2]);
+    List<String> compilerArgs = Arrays.asList(args).subList(3, args.length);
+
+    long before = median(Collections.<String> emptyList(), jar, compilerArgs, iterations);
+    long after = median(
+        Arrays.asList("-XX:+IgnoreUnrecognizedVMOptions", "-XX:+UseAppCDS", "-Xshare:auto",
+            "-XX:SharedArchiveFile=" + archive),
+        jar, compilerArgs, iterations);
+
+    System.out.println("Cold start without class-data-sharing archive : " + before + "ms");
+    System.out.println("Cold start with class-data-sharing archive    : " + after + "ms");
+  }
+}
@@ -1,5 +1,8 @@
 package com.google.javascript.jscomp;
 
+import com.google.common.collect.Lists;
+import com.google.javascript.rhino.Node;
+
 public class FactoryInjectorProcessorTest extends CompilerTestCase {
 
   private static String EXTERNS = "var window;";
@@ -48,6 +51,71 @@ public class FactoryInjectorProcessorTest extends CompilerTestCase {
   }
 
 
+  public void testHotSwapScript() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(
+            SourceFile.fromCode("a.js", "/** @constructor */ function Foo(foo) {}"),
+            SourceFile.fromCode("b.js", "camp.utils.dependencies.inject.once(Foo, window);")),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    new FactoryInjectorProcessor(context).process(root.getFirstChild(), root.getLastChild());
+
+    Node script = root.getLastChild().getLastChild();
+    String injectCode = compiler.toSource(script);
+    assertEquals(
+        "window.jscomp$instanceVar0_0||"
+            + "(window.jscomp$instanceVar0_0=Foo.jscomp$newInstance(window))",
+        injectCode);
+
+    Node originalScript = root.getLastChild().getFirstChild();
+    Node newScript = new CompilerInput(SourceFile.fromCode("a.js",
+        "/** @constructor */ function Foo(foo, bar) {}")).getAstRoot(compiler);
+    root.getLastChild().replaceChild(originalScript, newScript);
+    new FactoryInjectorProcessor(context).hotSwapScript(newScript, originalScript);
+
+    assertEquals(
+        "function Foo(foo,bar){}"
+            + "Foo.jscomp$newInstance=function(bindings){"
+            + "return new Foo(bindings.foo(),bindings.bar())}",
+        compiler.toSource(newScript));
+    assertEquals(injectCode, compiler.toSource(script));
+
+    originalScript = script;
+    script = new CompilerInput(SourceFile.fromCode("b.js",
+        "camp.utils.dependencies.inject.once(Foo, window);")).getAstRoot(compiler);
+    root.getLastChild().replaceChild(originalScript, script);
+    new FactoryInjectorProcessor(context).hotSwapScript(script, originalScript);
+
+    assertEquals(injectCode, compiler.toSource(script));
+  }
+
+
+  public void testMarkerFilter() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        Lists.newArrayList(SourceFile.fromCode("externs", EXTERNS)),
+        Lists.newArrayList(
+            SourceFile.fromCode("a.js", "/** @constructor */ function Foo(foo) {}"
+                + "var Alias = Foo;"),
+            SourceFile.fromCode("b.js", "camp.utils.dependencies.inject(Alias, window);")),
+        getOptions());
+    compiler.parseInputs();
+    Node root = compiler.getRoot();
+    CampContext context = new CampContext(compiler);
+    new FactoryInjectorProcessor(context).process(root.getFirstChild(), root.getLastChild());
+
+    // The constructor and the alias are collected from the marker free script.
+    assertEquals(1, context.getMarkerFilter().getInjectorSkipCount());
+    assertEquals(
+        "function Foo(foo){}var Alias=Foo;Alias.jscomp$newInstance=Foo.jscomp$newInstance",
+        compiler.toSource(root.getLastChild().getFirstChild()));
+  }
+
+
   @Override
   protected FactoryInjectorProcessor getProcessor(Compiler compiler) {
     return new FactoryInjectorProcessor(compiler);